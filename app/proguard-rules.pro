@@ -1 +1,5 @@
--dontwarn com.squareup.okhttp.**
\ No newline at end of file
+-dontwarn com.squareup.okhttp.**
+
+# Glide finds its module by name
+-keep public class * extends com.bumptech.glide.module.AppGlideModule
+-keep class com.bumptech.glide.GeneratedAppGlideModuleImpl
@@ -1,6 +1,6 @@
 package ca.marklauman.dominionpicker;
 
-import android.content.SharedPreferences;
+import android.content.ContentUris;
 import android.content.res.Resources;
 import android.database.Cursor;
 import android.os.Bundle;
@@ -18,21 +18,22 @@ import android.view.View;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.RequestOptions;
-
 import butterknife.BindView;
 import butterknife.ButterKnife;
+
+import java.util.Set;
+
 import ca.marklauman.dominionpicker.userinterface.InfoTextView;
 import ca.marklauman.dominionpicker.userinterface.icons.IconDescriber;
 import ca.marklauman.dominionpicker.userinterface.icons.PriceIcon;
 import ca.marklauman.dominionpicker.userinterface.imagefactories.CardColorFactory;
+import ca.marklauman.dominionpicker.userinterface.imagefactories.SetIcons;
 import ca.marklauman.dominionpicker.community.EmailButton;
+import ca.marklauman.dominionpicker.database.DataDb;
 import ca.marklauman.dominionpicker.database.LoaderId;
 import ca.marklauman.dominionpicker.database.Provider;
 import ca.marklauman.dominionpicker.database.TableCard;
 import ca.marklauman.dominionpicker.settings.Pref;
-import ca.marklauman.tools.Utils;
 
 /** Activity used to display detailed card information.
  *  This goes into detail on ONE card. No other cards are shown.
@@ -50,10 +51,10 @@ public class ActivityCardInfo extends AppCompatActivity
                TableCard._TYPE_ACT, TableCard._TYPE_TREAS, TableCard._TYPE_VICTORY, // colorFactory
                TableCard._TYPE_DUR, TableCard._TYPE_REACT, TableCard._TYPE_RESERVE, // required rows
                TableCard._TYPE_CURSE, TableCard._TYPE_EVENT, TableCard._TYPE_LANDMARK};
+    /** Columns used by the history loader */
+    private static final String[] COLS_HISTORY = {DataDb._H_TIME};
 
 
-    /** Icons used for the individual expansions. */
-    private int[] expIcons;
     /** Used to generate the card color. */
     private CardColorFactory colorFactory;
     /** Holds the price of the card */
@@ -77,6 +78,8 @@ public class ActivityCardInfo extends AppCompatActivity
     @BindView(R.id.card_set_name) TextView vSetName;
     /** View holding the set's icon */
     @BindView(R.id.card_set)      ImageView vSetIcon;
+    /** View holding the number of shuffles with the card */
+    @BindView(R.id.card_history)  TextView vHistory;
 
 
     @Override
@@ -99,10 +102,19 @@ public class ActivityCardInfo extends AppCompatActivity
 
         // Set up the icon providers
         colorFactory = new CardColorFactory(this);
-        expIcons = Utils.getResourceArray(this, R.array.card_set_icons);
 
         // Start to load the card
         getSupportLoaderManager().restartLoader(LoaderId.INFO_CARD, null, this);
+        getSupportLoaderManager().initLoader(LoaderId.INFO_HISTORY, null, this);
+    }
+
+
+    @Override
+    protected void onRestart() {
+        super.onRestart();
+        // Single shuffles are not notified on the card's history,
+        // so count them again in case some were made or deleted while away.
+        getSupportLoaderManager().restartLoader(LoaderId.INFO_HISTORY, null, this);
     }
 
 
@@ -116,8 +128,8 @@ public class ActivityCardInfo extends AppCompatActivity
 
 
     @Override
-    public void onSharedPreferenceChanged(SharedPreferences pref, String key) {
-        if(!Pref.COMP_LANG.equals(key)) return;
+    public void onPreferencesChanged(Set<String> keys) {
+        if(!keys.contains(Pref.COMP_LANG)) return;
         getSupportLoaderManager().restartLoader(LoaderId.INFO_CARD, null, this);
     }
 
@@ -125,16 +137,25 @@ public class ActivityCardInfo extends AppCompatActivity
     @Override @NonNull
     public Loader<Cursor> onCreateLoader(int id, Bundle args) {
         CursorLoader c = new CursorLoader(this);
-        c.setUri(Provider.URI_CARD_ALL);
-        c.setProjection(COLS_USED);
         long card = getIntent().getLongExtra(PARAM_ID, -1);
-        c.setSelection(TableCard._ID+"="+card+" AND "+Pref.languageFilter(this));
+        if(id == LoaderId.INFO_HISTORY) {
+            c.setUri(ContentUris.withAppendedId(Provider.URI_HIST_CARD, card));
+            c.setProjection(COLS_HISTORY);
+            return c;
+        }
+        c.setUri(ContentUris.withAppendedId(Provider.URI_CARD_ALL, card));
+        c.setProjection(COLS_USED);
+        c.setSelection(Pref.languageFilter(this));
         return c;
     }
 
 
     @Override
     public void onLoadFinished(@NonNull Loader<Cursor> loader, Cursor data) {
+        if(loader.getId() == LoaderId.INFO_HISTORY) {
+            showHistory(data == null ? 0 : data.getCount());
+            return;
+        }
         if(data == null || !data.moveToFirst()) {
             Log.wtf("ca.marklauman.dominionpicker.ActivityCardInfo",
                     "There is no card "+getIntent().getLongExtra(PARAM_ID, -1));
@@ -174,13 +195,7 @@ public class ActivityCardInfo extends AppCompatActivity
         vSetName.setText(setName);
 
         // Icon of the card set
-        int expIcon = R.drawable.ic_set_unknown;
-        try { expIcon = expIcons[getInt(data, TableCard._SET_ID)];
-        } catch(Exception ignored){}
-        Glide.with(this)
-             .load(expIcon)
-             .apply(RequestOptions.noTransformation())
-             .into(vSetIcon);
+        vSetIcon.setImageDrawable(SetIcons.get(this, getInt(data, TableCard._SET_ID)));
 
         // Show the card
         vLoading.setVisibility(View.GONE);
@@ -189,6 +204,18 @@ public class ActivityCardInfo extends AppCompatActivity
     
     
 
+    /** Show the number of shuffles in the history that have this card. */
+    private void showHistory(int shuffles) {
+        if(shuffles == 0) {
+            vHistory.setVisibility(View.GONE);
+            return;
+        }
+        vHistory.setText(getResources().getQuantityString(R.plurals.card_history,
+                                                          shuffles, shuffles));
+        vHistory.setVisibility(View.VISIBLE);
+    }
+
+
     /** Configure the email panel */
     private void setupEmail(View vNoInfo, Resources res, long cardId, String lang) {
         // Ge the id of the current language
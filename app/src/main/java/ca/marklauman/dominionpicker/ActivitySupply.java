@@ -1,9 +1,9 @@
 package ca.marklauman.dominionpicker;
 
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
@@ -22,7 +22,11 @@ import android.widget.TextView;
 
 import butterknife.BindView;
 import butterknife.ButterKnife;
+
+import java.util.Set;
+
 import ca.marklauman.dominionpicker.database.LoaderId;
+import ca.marklauman.dominionpicker.database.IdFilter;
 import ca.marklauman.dominionpicker.database.Provider;
 import ca.marklauman.dominionpicker.database.TableCard;
 import ca.marklauman.dominionpicker.database.TableSupply;
@@ -31,7 +35,6 @@ import ca.marklauman.dominionpicker.settings.Pref;
 import ca.marklauman.dominionpicker.userinterface.recyclerview.AdapterCards.ViewHolder;
 import ca.marklauman.tools.QueryDialogBuilder;
 import ca.marklauman.tools.QueryDialogBuilder.QueryListener;
-import ca.marklauman.tools.Utils;
 import ca.marklauman.dominionpicker.userinterface.recyclerview.AdapterCardsDismiss;
 import ca.marklauman.tools.recyclerview.ListDivider;
 
@@ -191,9 +194,9 @@ public class ActivitySupply extends AppCompatActivity
             // Save the wipe to the database
             ContentValues values = new ContentValues();
             values.putNull(TableSupply._NAME);
-            getContentResolver().update(Provider.URI_HIST, values,
-                                        TableSupply._ID + "=?",
-                                        new String[]{"" + supply.time});
+            getContentResolver().update(ContentUris.withAppendedId(Provider.URI_HIST,
+                                                                   supply.time),
+                                        values, null, null);
             return true;
         }
         return super.onOptionsItemSelected(item);
@@ -222,12 +225,9 @@ public class ActivitySupply extends AppCompatActivity
 
 
     @Override
-    public void onSharedPreferenceChanged(SharedPreferences pref, String key) {
-        switch(key) {
-            case Pref.COMP_LANG: case Pref.COMP_SORT_CARD:
-                getSupportLoaderManager().restartLoader(LoaderId.SUPPLY_CARDS, null, cardLoader);
-                break;
-        }
+    public void onPreferencesChanged(Set<String> keys) {
+        if(Pref.anyChanged(keys, Pref.COMP_LANG, Pref.COMP_SORT_CARD))
+            getSupportLoaderManager().restartLoader(LoaderId.SUPPLY_CARDS, null, cardLoader);
     }
 
 
@@ -259,10 +259,10 @@ public class ActivitySupply extends AppCompatActivity
             c.setProjection(AdapterCardsDismiss.COLS_USED);
             c.setSortOrder(Pref.cardSort(ActivitySupply.this));
 
-            // Selection string (sql WHERE clause)
-            // _id IN (1,2,3,4)
-            String cards = TableCard._ID+" IN ("+ Utils.join(",",supply.cards)+")";
-            c.setSelection("("+cards+") AND "+ Pref.languageFilter(ActivitySupply.this));
+            // Selection string (sql WHERE clause). The supply cards are bound as arguments.
+            c.setSelection(IdFilter.in(TableCard._ID, supply.cards)+" AND "
+                           + Pref.languageFilter(ActivitySupply.this));
+            c.setSelectionArgs(IdFilter.args(supply.cards));
 
             return c;
         }
@@ -314,17 +314,14 @@ public class ActivitySupply extends AppCompatActivity
             // Load from the history table
             long supply_id = args.getLong(PARAM_HISTORY_ID, -1);
             if(supply_id != -1) {
-                c.setUri(Provider.URI_HIST);
-                c.setSelection(TableSupply._ID + "=?");
-                c.setSelectionArgs(new String[]{"" + supply_id});
+                c.setUri(ContentUris.withAppendedId(Provider.URI_HIST, supply_id));
                 return c;
             }
             // Load from the sample table
             supply_id = args.getLong(PARAM_SUPPLY_ID, -1);
             if(supply_id != -1) {
-                c.setUri(Provider.URI_SUPPLY);
-                c.setSelection(TableSupply._ID+"=? AND "+ Pref.languageFilter(ActivitySupply.this));
-                c.setSelectionArgs(new String[]{""+supply_id});
+                c.setUri(ContentUris.withAppendedId(Provider.URI_SUPPLY, supply_id));
+                c.setSelection(Pref.languageFilter(ActivitySupply.this));
                 return c;
             }
             throw new UnsupportedOperationException("Loader id not specified");
@@ -389,8 +386,8 @@ public class ActivitySupply extends AppCompatActivity
             ContentValues values = new ContentValues();
             values.put(TableSupply._NAME, name);
             mContext.getContentResolver()
-                    .update(Provider.URI_HIST, values,
-                            TableSupply._ID+"=?", new String[]{""+supply.time});
+                    .update(ContentUris.withAppendedId(Provider.URI_HIST, supply.time),
+                            values, null, null);
         }
     }
 }
\ No newline at end of file
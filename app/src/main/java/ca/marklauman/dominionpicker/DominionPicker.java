@@ -1,15 +1,48 @@
 package ca.marklauman.dominionpicker;
 
 import android.app.Application;
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
 
+import ca.marklauman.dominionpicker.database.CoreDbInstaller;
+import ca.marklauman.dominionpicker.database.SearchBuilder;
+import ca.marklauman.dominionpicker.history.HistoryPruner;
 import ca.marklauman.dominionpicker.settings.Pref;
 
 /** Application object used to run one-time scripts when any part of the app starts.
  *  @author Mark Lauman */
 public class DominionPicker extends Application {
+    /** Uptime when the app started (before any content providers are created). */
+    private static long startTime;
+    /** True once the first frame has been reported. */
+    private static boolean firstFrameReported = false;
+
+    @Override
+    protected void attachBaseContext(Context base) {
+        startTime = SystemClock.uptimeMillis();
+        super.attachBaseContext(base);
+    }
+
+    /** Log the time from the start of the app to its first frame (the cold start time),
+     *  and how much of it the main thread spent waiting for the preferences to be set up.
+     *  Only logged in debug builds, and only by the first call.
+     *  Must be called on the main thread. */
+    public static void reportFirstFrame() {
+        if(firstFrameReported) return;
+        firstFrameReported = true;
+        if(BuildConfig.DEBUG)
+            Log.d("ca.marklauman.dominionpicker.DominionPicker",
+                  "start to first frame: " + (SystemClock.uptimeMillis() - startTime) + "ms ("
+                  + Pref.setupWaitMillis() + "ms waiting for preferences)");
+    }
+
     @Override
     public void onCreate() {
         super.onCreate();
+        CoreDbInstaller.start(this);
         Pref.setup(this);
+        new HistoryPruner(this).start();
+        new SearchBuilder(this).start();
     }
 }
\ No newline at end of file
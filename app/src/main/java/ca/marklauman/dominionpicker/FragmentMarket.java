@@ -1,6 +1,5 @@
 package ca.marklauman.dominionpicker;
 
-import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
@@ -18,14 +17,18 @@ import android.view.ViewGroup;
 import android.widget.Toast;
 
 import java.util.LinkedList;
+import java.util.Set;
 
 import ca.marklauman.dominionpicker.database.LoaderId;
+import ca.marklauman.dominionpicker.database.IdFilter;
+import ca.marklauman.dominionpicker.database.MaskFilter;
 import ca.marklauman.dominionpicker.database.Provider;
 import ca.marklauman.dominionpicker.database.TableCard;
+import ca.marklauman.dominionpicker.settings.CardBits;
 import ca.marklauman.dominionpicker.settings.Pref;
+import ca.marklauman.dominionpicker.settings.ShuffleConfig;
 import ca.marklauman.dominionpicker.userinterface.recyclerview.AdapterCards;
 import ca.marklauman.dominionpicker.userinterface.recyclerview.AdapterCards.ViewHolder;
-import ca.marklauman.tools.Utils;
 import ca.marklauman.tools.recyclerview.ListDivider;
 
 /** Governs all the Black Market shuffler screens.
@@ -164,22 +167,24 @@ public class FragmentMarket extends Fragment
 
 
     @Override
-    public void onSharedPreferenceChanged(SharedPreferences pref, String key) {
+    public void onPreferencesChanged(Set<String> keys) {
         FragmentActivity activity = getActivity();
         if(activity == null) return;
-        switch(key) {
-            case Pref.FILT_SET: case Pref.FILT_COST: case Pref.FILT_POTION:
-            case Pref.FILT_CURSE: case Pref.REQ_CARDS: case Pref.FILT_CARD:
-                setActivePanel(PANEL_STARTUP);
-                activity.getSupportLoaderManager()
-                        .restartLoader(LoaderId.MARKET_SHUFFLE, null, this);
-                break;
-            case Pref.COMP_LANG: case Pref.COMP_SORT_CARD:
-                if(choices == null) return;
-                setActivePanel(PANEL_STARTUP);
-                activity.getSupportLoaderManager()
-                        .restartLoader(LoaderId.MARKET_SHOW, null, this);
-                break;
+        if(Pref.anyChanged(keys, Pref.FILT_SET, Pref.FILT_COST, Pref.FILT_DEBT,
+                           Pref.FILT_POTION, Pref.FILT_CURSE, Pref.REQ_CARDS,
+                           Pref.FILT_CARD)) {
+            // A new stock is shuffled, so the cards on offer are put away
+            choices = null;
+            setActivePanel(PANEL_STARTUP);
+            activity.getSupportLoaderManager()
+                    .restartLoader(LoaderId.MARKET_SHUFFLE, null, this);
+        }
+        // Any cards still on offer are shown in the new language or order
+        if(Pref.anyChanged(keys, Pref.COMP_LANG, Pref.COMP_SORT_CARD)) {
+            if(choices == null) return;
+            setActivePanel(PANEL_STARTUP);
+            activity.getSupportLoaderManager()
+                    .restartLoader(LoaderId.MARKET_SHOW, null, this);
         }
     }
 
@@ -234,36 +239,31 @@ public class FragmentMarket extends Fragment
                 hasNewStock = true;
 
                 // Filter out cards not visible in the picker, and special cards
-                SharedPreferences pref = Pref.get(getContext());
-                String sel = FragmentPicker.getFilter(pref)
+                ShuffleConfig config = Pref.config();
+                String sel = FragmentPicker.FILTER
                              +" AND "+TableCard._TYPE_EVENT+"=0"
                              +" AND "+TableCard._TYPE_LANDMARK+"=0";
 
                 // Filter out cards excluded by the card list & the black market card
-                String filt_card = pref.getString(Pref.FILT_CARD, "");
-                filt_card = (filt_card.length() == 0) ? TableCard.ID_BLACK_MARKET+""
-                                                      : TableCard.ID_BLACK_MARKET+","+filt_card;
+                CardBits filt_card = config.filtered.with(TableCard.ID_BLACK_MARKET);
 
                 // Get the supply passed to this fragment and exclude it
                 Bundle args = getArguments();
                 long[] supply_arr = (args == null) ? null : args.getLongArray(PARAM_SUPPLY);
                 if(supply_arr == null) supply_arr = new long[0];
-                if(0 < supply_arr.length) filt_card += ","+Utils.join(",", supply_arr);
+                if(0 < supply_arr.length) filt_card = filt_card.with(supply_arr);
 
                 // If no supply cards are provided, filter out required cards.
                 // They are required to be in the supply
-                else {
-                    String req_cards = pref.getString(Pref.REQ_CARDS, "");
-                    if(0 < req_cards.length()) filt_card += ","+req_cards;
-                }
-
-                // Add the card filter to the selection
-                sel += " AND "+TableCard._ID+" NOT IN ("+filt_card+")";
+                else filt_card = filt_card.union(config.required);
 
                 // Build the cursor loader
                 c.setUri(Provider.URI_CARD_DATA);
                 c.setProjection(new String[]{TableCard._ID});
-                c.setSelection(sel);
+                long[] excluded = filt_card.toArray();
+                c.setSelection(sel+" AND "+IdFilter.notIn(TableCard._ID, excluded));
+                c.setSelectionArgs(MaskFilter.join(config.filterArgs(),
+                                                   IdFilter.args(excluded)));
                 c.setSortOrder("random()");
                 return c;
 
@@ -272,27 +272,11 @@ public class FragmentMarket extends Fragment
                 c.setProjection(AdapterCards.COLS_USED);
                 c.setSortOrder(Pref.cardSort(getContext()));
 
-                // no choices, no cards
-                if(choices == null || choices.length == 0) {
-                    c.setSelection(TableCard._ID + "=?");
-                    c.setSelectionArgs(new String[]{"-1"});
-                    return c;
-                }
-
-                // Generate selection string
-                StringBuilder cardSel = new StringBuilder(TableCard._ID+" IN (");
-                for(long ignored : choices)
-                    cardSel.append("?,");
-                cardSel.deleteCharAt(cardSel.length()-1)
-                       .append(") AND ")
-                       .append(Pref.languageFilter(getContext()));
-                c.setSelection(cardSel.toString());
-
-                // selection args
-                String[] strChoices = new String[choices.length];
-                for(int i=0; i<choices.length; i++)
-                    strChoices[i] = Long.toString(choices[i]);
-                c.setSelectionArgs(strChoices);
+                // Show the choices (no choices gives only padding, which matches no cards)
+                long[] shown = choices == null ? new long[0] : choices;
+                c.setSelection(IdFilter.in(TableCard._ID, shown)
+                               +" AND "+Pref.languageFilter(getContext()));
+                c.setSelectionArgs(IdFilter.args(shown));
                 return c;
         }
         return c;
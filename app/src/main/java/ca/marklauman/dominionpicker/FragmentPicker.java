@@ -1,14 +1,18 @@
 package ca.marklauman.dominionpicker;
 
-import android.content.SharedPreferences;
+import android.content.Context;
 import android.database.Cursor;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentActivity;
 import android.support.v4.app.LoaderManager.LoaderCallbacks;
 import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.RecyclerView.ItemAnimator;
@@ -19,17 +23,34 @@ import android.view.ViewGroup;
 
 import butterknife.BindView;
 import butterknife.ButterKnife;
+
+import java.util.Set;
+
+import ca.marklauman.dominionpicker.database.FilterCursor;
 import ca.marklauman.dominionpicker.database.LoaderId;
+import ca.marklauman.dominionpicker.database.MaskFilter;
 import ca.marklauman.dominionpicker.database.Provider;
 import ca.marklauman.dominionpicker.database.TableCard;
 import ca.marklauman.dominionpicker.userinterface.recyclerview.AdapterCardsFilter;
+import ca.marklauman.dominionpicker.userinterface.recyclerview.FastScroller;
+import ca.marklauman.dominionpicker.userinterface.recyclerview.SectionIndex;
 import ca.marklauman.dominionpicker.settings.Pref;
+import ca.marklauman.dominionpicker.settings.ShuffleConfig;
 import ca.marklauman.tools.recyclerview.ListDivider;
 
 /** Fragment governing the card list screen.
+ *  All cards in the current language are loaded at once. The set, cost, potion and curse
+ *  filters are applied to them in memory, so changing a filter only updates the
+ *  rows that appear or disappear. A new search keeps the old rows on display until
+ *  its cards are loaded, then only updates the rows that changed.
  *  @author Mark Lauman */
 public class FragmentPicker extends Fragment
                             implements LoaderCallbacks<Cursor>, Pref.Listener {
+    /** Time to wait for more typing before a search is run, in milliseconds. */
+    private static final long SEARCH_DELAY = 200L;
+    /** Loader argument that is true if only the search has changed,
+     *  so the cards on display may stay until the new ones are loaded. */
+    private static final String ARG_SEARCH_ONLY = "search_only";
 
     /** The list of cards. */
     @BindView(android.R.id.list)     RecyclerView card_list;
@@ -40,8 +61,32 @@ public class FragmentPicker extends Fragment
 
     /** The adapter for the card list. */
     private AdapterCardsFilter adapter;
-    /** The cursor containing the cards on display right now. */
-    private Cursor mCursor = null;
+    /** The fast-scroll thumb of the card list. */
+    private FastScroller scroller;
+    /** Every card that may be displayed, before the filters are applied. */
+    private FilterCursor mCursor = null;
+    /** The cards on display right now. */
+    private FilterCursor mShown = null;
+    /** The sections of {@link #mShown}. */
+    private SectionIndex mSections = SectionIndex.EMPTY;
+    /** The task filtering the cards, if one is running. */
+    private FilterTask mFilterTask = null;
+    /** The text the cards are searched for (empty to show all cards). */
+    private String search = "";
+    /** Waits for the user to stop typing before running a search. */
+    private final Handler searchHandler = new Handler(Looper.getMainLooper());
+    /** Runs the search in {@link #search}. */
+    private final Runnable searchRunner = new Runnable() {
+        @Override
+        public void run() {
+            FragmentActivity act = getActivity();
+            if(act == null) return;
+            Bundle args = new Bundle();
+            args.putBoolean(ARG_SEARCH_ONLY, true);
+            act.getSupportLoaderManager()
+               .restartLoader(LoaderId.PICKER, args, FragmentPicker.this);
+        }
+    };
 
 
     @Override
@@ -58,23 +103,39 @@ public class FragmentPicker extends Fragment
     @Override
     public void onDestroy() {
         Pref.removeListener(this);
+        searchHandler.removeCallbacks(searchRunner);
+        if(mFilterTask != null) mFilterTask.cancel(false);
         super.onDestroy();
     }
 
 
     /** Called when a preference's value has changed */
     @Override
-    public void onSharedPreferenceChanged(SharedPreferences pref, String key) {
-        switch(key) {
-            // These preferences affect the picker
-            case Pref.FILT_SET:  case Pref.FILT_COST: case Pref.FILT_POTION:
-            case Pref.FILT_CURSE: case Pref.COMP_SORT_CARD: case Pref.COMP_LANG:
-                FragmentActivity act = getActivity();
-                if(act == null) return;
-                act.getSupportLoaderManager()
-                   .restartLoader(LoaderId.PICKER, null, this);
-                break;
-        }
+    public void onPreferencesChanged(Set<String> keys) {
+        // These preferences change the cards loaded.
+        // The new cards are filtered once loaded, so any filter changed with them
+        // is applied too and needs no filter of its own.
+        if(Pref.anyChanged(keys, Pref.COMP_SORT_CARD, Pref.COMP_LANG)) {
+            FragmentActivity act = getActivity();
+            if(act == null) return;
+            act.getSupportLoaderManager()
+               .restartLoader(LoaderId.PICKER, null, this);
+        // These only change which of them are shown
+        } else if(Pref.anyChanged(keys, Pref.FILT_SET, Pref.FILT_COST, Pref.FILT_DEBT,
+                                  Pref.FILT_POTION, Pref.FILT_CURSE))
+            applyFilter(false);
+    }
+
+
+    /** Filter the loaded cards in the background, then display the result.
+     *  @param newSearch True if the cards were just loaded for a new search. The cards
+     *                   on display are then matched to the new ones by their ids. */
+    private void applyFilter(boolean newSearch) {
+        if(mFilterTask != null) mFilterTask.cancel(false);
+        mFilterTask = null;
+        if(mCursor == null) return;
+        mFilterTask = new FilterTask(mCursor, mShown, Pref.config(), newSearch);
+        mFilterTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
     }
 
 
@@ -93,24 +154,28 @@ public class FragmentPicker extends Fragment
         if (animator instanceof SimpleItemAnimator)
             ((SimpleItemAnimator) animator).setSupportsChangeAnimations(false);
 
-        final SharedPreferences pref = Pref.get(getContext());
-        adapter = new AdapterCardsFilter(card_list, pref.getString(Pref.FILT_CARD, ""),
-                                                    pref.getString(Pref.REQ_CARDS, ""));
+        ShuffleConfig config = Pref.config();
+        adapter = new AdapterCardsFilter(card_list, config.filtered, config.required);
         card_list.setAdapter(adapter);
-        updateView();
+        scroller = new FastScroller(card_list);
+        updateView(null);
         return view;
     }
 
 
-    private void updateView() {
+    /** Display the cards in {@link #mShown}.
+     *  @param changes The rows that changed since the last cards displayed,
+     *                 or null to redisplay all of them. */
+    private void updateView(DiffUtil.DiffResult changes) {
         if(adapter == null) return;
-        adapter.changeCursor(mCursor);
+        adapter.changeCursor(mShown, changes);
+        scroller.setSections(mSections);
 
         // Determine the active view: 1-Loading, 2-Empty, 3-List
         int activeView = 1;
-        if(mCursor != null) {
+        if(mShown != null) {
             activeView++;
-            if(mCursor.moveToFirst()) activeView++;
+            if(mShown.getCount() != 0) activeView++;
         }
 
         // Apply the active view
@@ -124,6 +189,7 @@ public class FragmentPicker extends Fragment
     public void onDestroyView() {
         saveSelections();
         adapter = null;
+        scroller = null;
         super.onDestroyView();
     }
 
@@ -132,8 +198,8 @@ public class FragmentPicker extends Fragment
     public void saveSelections() {
         if(adapter == null) return;
         Pref.edit(getContext())
-            .putString(Pref.FILT_CARD, adapter.getFilter())
-            .putString(Pref.REQ_CARDS, adapter.getRequired())
+            .putString(Pref.FILT_CARD, adapter.getFilter().encode())
+            .putString(Pref.REQ_CARDS, adapter.getRequired().encode())
             .commit();
     }
 
@@ -143,70 +209,167 @@ public class FragmentPicker extends Fragment
     }
 
 
+    /** Only show the cards matching a search. The search is run once the text
+     *  has not changed for {@link #SEARCH_DELAY}, so it is not run for every key typed.
+     *  @param text The text searched for. Each word matches the start of a word in the
+     *              card's name, type, text or rules. Empty to show all cards. */
+    public void setSearch(String text) {
+        text = (text == null) ? "" : text.trim();
+        if(text.equals(search)) return;
+        search = text;
+        searchHandler.removeCallbacks(searchRunner);
+        searchHandler.postDelayed(searchRunner, SEARCH_DELAY);
+    }
+
+
     @Override @NonNull
     public Loader<Cursor> onCreateLoader(int id, Bundle args) {
         assert getActivity() != null;
-        // Show the loading icon if we have views
-        mCursor = null;
-        updateView();
-
+        if(mFilterTask != null) mFilterTask.cancel(false);
+        mFilterTask = null;
+        boolean searchOnly = args != null && args.getBoolean(ARG_SEARCH_ONLY) && mShown != null;
+        if(!searchOnly) {
+            // Show the loading icon if we have views
+            mCursor = null;
+            mShown = null;
+            mSections = SectionIndex.EMPTY;
+            updateView(null);
+        }
+        // Otherwise the rows on display were already read out of the old cards,
+        // so they stay until the new cards are ready.
 
         // Basic setup
-        CursorLoader c = new CursorLoader(getActivity());
-        c.setUri(Provider.URI_CARD_ALL);
-        c.setProjection(AdapterCardsFilter.COLS_USED);
-        String sel = getFilter(Pref.get(getContext()));
-        sel += " AND "+ Pref.languageFilter(getContext());
-        c.setSelection(sel);
-        c.setSortOrder(Pref.cardSort(getContext()));
+        CursorLoader c = new PickerLoader(getActivity(), Pref.config(), searchOnly);
+        if(search.length() == 0)
+            c.setUri(Provider.URI_CARD_ALL);
+        else c.setUri(Provider.URI_CARD_SEARCH.buildUpon()
+                                              .appendQueryParameter(Provider.PARAM_SEARCH, search)
+                                              .build());
+        c.setProjection(FilterCursor.projection(AdapterCardsFilter.COLS_USED));
 
         return c;
     }
 
 
-    /** Get the filter used by the picker to hide cards that will never be in the supply.
+    /** The filter used to hide cards that will never be in the supply.
      *  This does not include individual deselected or required cards.
-     *  @param pref The preferences used to retrieve filter values.
-     *  @return The SQL selection statement that FragmentPicker uses to hide cards.
-     *  This statement is never null or the empty string. There will be something in here. */
-    public static String getFilter(SharedPreferences pref) {
-        // Filter out sets (the set filter is always present)
-        String curSel = pref.getString(Pref.FILT_SET, "");
-        String sel = (curSel.length()==0) ? TableCard._SET_ID+"=NULL"
-                                          : TableCard._SET_ID+" IN ("+curSel+")";
-
-        // Filter out potions
-        if(!pref.getBoolean(Pref.FILT_POTION, true))
-            sel += " AND "+TableCard._POT+"=0";
-
-        // Filter out coins
-        curSel = pref.getString(Pref.FILT_COST, "");
-        if(0 < curSel.length())
-            sel += " AND "+TableCard._COST_VAL+" NOT IN ("+curSel+")";
-
-        // Filter out debt
-        curSel = pref.getString(Pref.FILT_DEBT, "");
-        if(0 < curSel.length())
-            sel += " AND "+TableCard._DEBT+" NOT IN ("+curSel+")";
-
-        // Filter out cursers
-        boolean filt_curse = pref.getBoolean(Pref.FILT_CURSE, true);
-        if(!filt_curse)
-            sel += " AND " + TableCard._META_CURSER + "=0";
-
-        return sel;
-    }
+     *  The picker applies the same filter in memory with {@link ShuffleConfig#allows}.
+     *  The text of this filter never changes - the filter values are bound as
+     *  arguments, which are retrieved with {@link ShuffleConfig#filterArgs()}. */
+    public static final String FILTER = MaskFilter.in(TableCard._SET_ID)
+                                        + " AND (?='1' OR "+TableCard._POT+"=0)"
+                                        + " AND "+MaskFilter.notIn(TableCard._COST_VAL)
+                                        + " AND "+MaskFilter.notIn(TableCard._DEBT)
+                                        + " AND (?='1' OR "+TableCard._META_CURSER+"=0)";
 
 
     @Override
     public void onLoadFinished(@NonNull Loader<Cursor> loader, Cursor data) {
-        mCursor = data;
-        updateView();
+        mCursor = (FilterCursor) data;
+        applyFilter(((PickerLoader) loader).searchOnly);
     }
 
     @Override
     public void onLoaderReset(@NonNull Loader<Cursor> loader) {
+        if(mFilterTask != null) mFilterTask.cancel(false);
+        mFilterTask = null;
         mCursor = null;
-        updateView();
+        mShown = null;
+        mSections = SectionIndex.EMPTY;
+        updateView(null);
+    }
+
+
+    /** Loads the cards of the picker, reading their filter columns in the background. */
+    private static class PickerLoader extends CursorLoader {
+        /** The columns the cards are sorted by (from {@link ShuffleConfig#cardSortKeys()}). */
+        private final int[] sortKeys;
+        /** True if this loads a new search of the cards on display. */
+        final boolean searchOnly;
+
+        PickerLoader(Context context, ShuffleConfig config, boolean searchOnly) {
+            super(context);
+            this.searchOnly = searchOnly;
+            sortKeys = config.cardSortKeys();
+            setSelection(config.languageFilter);
+            setSortOrder(config.cardSort);
+        }
+
+        @Override
+        public Cursor loadInBackground() {
+            Cursor cursor = super.loadInBackground();
+            return cursor == null ? null : new FilterCursor(cursor, sortKeys);
+        }
+    }
+
+
+    /** Filters the loaded cards and works out which rows changed, in the background.
+     *  The result is only displayed if the cards have not been reloaded in the meantime.
+     *  <p>The rows of a new search are matched to the old rows by their ids. Only the
+     *  search changed, so a card with the same id is displayed the same way.</p> */
+    private class FilterTask extends AsyncTask<Void, Void, DiffUtil.DiffResult> {
+        /** All the loaded cards. */
+        private final FilterCursor cards;
+        /** The cards on display when the task started (may be null). */
+        private final FilterCursor oldShown;
+        /** The config to filter with. */
+        private final ShuffleConfig config;
+        /** True if the cards were loaded for a new search of {@link #oldShown}. */
+        private final boolean newSearch;
+        /** The cards that pass the filter. */
+        private FilterCursor newShown;
+        /** The sections of {@link #newShown}. */
+        private SectionIndex newSections;
+
+        FilterTask(FilterCursor cards, FilterCursor oldShown, ShuffleConfig config,
+                   boolean newSearch) {
+            this.cards = cards;
+            this.oldShown = oldShown;
+            this.config = config;
+            this.newSearch = newSearch;
+        }
+
+        @Override
+        protected DiffUtil.DiffResult doInBackground(Void... params) {
+            newShown = cards.filter(config);
+            newSections = newShown.sections();
+            // Cards from another load may hold different data, so redisplay everything
+            boolean same = cards.sameCards(oldShown);
+            if(!same && !(newSearch && oldShown != null)) return null;
+            final FilterCursor old = oldShown;
+            final FilterCursor shown = newShown;
+            // Filtering keeps the order of the cards, so there are no moves to detect.
+            // A new search may put them in a new order.
+            return DiffUtil.calculateDiff(new DiffUtil.Callback() {
+                @Override
+                public int getOldListSize() {
+                    return old.getCount();
+                }
+
+                @Override
+                public int getNewListSize() {
+                    return shown.getCount();
+                }
+
+                @Override
+                public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                    return old.getId(oldPosition) == shown.getId(newPosition);
+                }
+
+                @Override
+                public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                    return true;
+                }
+            }, !same);
+        }
+
+        @Override
+        protected void onPostExecute(DiffUtil.DiffResult changes) {
+            if(mFilterTask != this || mCursor != cards) return;
+            mFilterTask = null;
+            mShown = newShown;
+            mSections = newSections;
+            updateView(changes);
+        }
     }
 }
\ No newline at end of file
@@ -1,6 +1,5 @@
 package ca.marklauman.dominionpicker;
 
-import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.v4.app.Fragment;
@@ -10,6 +9,8 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
+import java.util.Set;
+
 import ca.marklauman.dominionpicker.settings.Pref;
 import ca.marklauman.dominionpicker.userinterface.recyclerview.AdapterRules;
 import ca.marklauman.tools.recyclerview.ListDivider;
@@ -62,11 +63,8 @@ public class FragmentRules extends Fragment
 
 
     @Override
-    public void onSharedPreferenceChanged(SharedPreferences pref, String key) {
-        switch(key) {
-            case Pref.COMP_LANG: case Pref.COMP_SORT_SET:
-                if(adapter != null) adapter.reload();
-                break;
-        }
+    public void onPreferencesChanged(Set<String> keys) {
+        if(Pref.anyChanged(keys, Pref.COMP_LANG, Pref.COMP_SORT_SET) && adapter != null)
+            adapter.reload();
     }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package ca.marklauman.dominionpicker;
 
 import butterknife.BindView;
 import butterknife.ButterKnife;
+import ca.marklauman.dominionpicker.database.Provider;
 import ca.marklauman.dominionpicker.history.FragmentHistory;
 import ca.marklauman.dominionpicker.settings.ActivityOptions;
 import ca.marklauman.dominionpicker.settings.Pref;
@@ -23,9 +24,11 @@ import android.support.v4.widget.DrawerLayout;
 import android.support.v7.app.ActionBar;
 import android.support.v7.app.ActionBarDrawerToggle;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.SearchView;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.AdapterView;
 import android.widget.ListView;
 import android.widget.Toast;
@@ -64,6 +67,7 @@ public class MainActivity extends AppCompatActivity
         Pref.checkLanguage(this);
         setContentView(R.layout.activity_main);
         ButterKnife.bind(this);
+        reportFirstFrame();
         shuffler = new ShuffleManager();
         vSubmit.setOnClickListener(shuffler);
 
@@ -128,6 +132,8 @@ public class MainActivity extends AppCompatActivity
 	public boolean onCreateOptionsMenu(Menu menu) {
         // Needs to be dynamic for multiple tabs
         getMenuInflater().inflate(R.menu.main, menu);
+        SearchView search = (SearchView) menu.findItem(R.id.action_search).getActionView();
+        search.setOnQueryTextListener(new SearchListener());
 		return true;
 	}
 
@@ -140,6 +146,13 @@ public class MainActivity extends AppCompatActivity
         // show the toggle all button on the picker screen
         menu.findItem(R.id.action_toggle_all)
             .setVisible(navHidden && sel == 1);
+        // same for the search box (closed when hidden, so the next picker starts unfiltered)
+        MenuItem search = menu.findItem(R.id.action_search);
+        if(!(navHidden && sel == 1)) search.collapseActionView();
+        search.setVisible(navHidden && sel == 1);
+        // the query stats are only exported from debug builds
+        menu.findItem(R.id.action_query_stats)
+            .setVisible(BuildConfig.DEBUG);
         return super.onPrepareOptionsMenu(menu);
     }
 	
@@ -156,6 +169,9 @@ public class MainActivity extends AppCompatActivity
             case R.id.action_toggle_all:
                 ((FragmentPicker)active).toggleAll();
                 return true;
+            case R.id.action_query_stats:
+                exportQueryStats();
+                return true;
 		}
 
         // Not an item we created
@@ -163,6 +179,52 @@ public class MainActivity extends AppCompatActivity
 	}
 
 
+    /** Share the latency histograms of the {@link Provider} as json,
+     *  so they can be analysed elsewhere. */
+    private void exportQueryStats() {
+        Bundle stats = getContentResolver().call(Provider.URI_CARD_ALL,
+                                                 Provider.METHOD_QUERY_STATS, null, null);
+        if(stats == null) return;
+        Intent send = new Intent(Intent.ACTION_SEND);
+        send.setType("application/json");
+        send.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.query_stats));
+        send.putExtra(Intent.EXTRA_TEXT, stats.getString(Provider.EXTRA_JSON));
+        startActivity(Intent.createChooser(send, getString(R.string.query_stats)));
+    }
+
+
+    /** Passes the text in the search box to the picker as it is typed. */
+    private class SearchListener implements SearchView.OnQueryTextListener {
+        @Override
+        public boolean onQueryTextSubmit(String query) {
+            onQueryTextChange(query);
+            return false;
+        }
+
+        @Override
+        public boolean onQueryTextChange(String newText) {
+            if(active instanceof FragmentPicker)
+                ((FragmentPicker)active).setSearch(newText);
+            return true;
+        }
+    }
+
+
+    /** Report the app's start up time when the first frame is about to be drawn. */
+    private void reportFirstFrame() {
+        final View decor = getWindow().getDecorView();
+        decor.getViewTreeObserver()
+             .addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+                 @Override
+                 public boolean onPreDraw() {
+                     decor.getViewTreeObserver().removeOnPreDrawListener(this);
+                     DominionPicker.reportFirstFrame();
+                     return true;
+                 }
+             });
+    }
+
+
     /** Used by subclasses to get this activity */
     private MainActivity getActivity() {
         return this;
@@ -2,7 +2,6 @@ package ca.marklauman.dominionpicker;
 
 import android.content.ContentValues;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.os.AsyncTask;
 import android.support.v4.content.LocalBroadcastManager;
@@ -11,9 +10,12 @@ import java.util.ArrayList;
 import java.util.Calendar;
 
 import ca.marklauman.dominionpicker.database.DataDb;
+import ca.marklauman.dominionpicker.database.IdFilter;
+import ca.marklauman.dominionpicker.database.MaskFilter;
 import ca.marklauman.dominionpicker.database.Provider;
 import ca.marklauman.dominionpicker.database.TableCard;
 import ca.marklauman.dominionpicker.settings.Pref;
+import ca.marklauman.dominionpicker.settings.ShuffleConfig;
 import ca.marklauman.tools.Utils;
 
 /** This task is used to shuffle new supplies.
@@ -56,28 +58,24 @@ class SupplyShuffler extends AsyncTask<Void, Void, Void> {
             return successfulResult(supply);
 
         // load applicable filters.
-        SharedPreferences pref = Pref.get(Pref.getAppContext());
-        String filt_pre = FragmentPicker.getFilter(pref);
-        String filt_req = pref.getString(Pref.REQ_CARDS, "");
-        String filt_card = pref.getString(Pref.FILT_CARD, "");
+        ShuffleConfig config = supply.config;
+        String[] args_pre = config.filterArgs();
 
         // Load the required cards into the supply
-        if(0 < filt_req.length())
-            loadCards(supply, joinFilters(filt_pre, TableCard._ID+" IN ("+filt_req+")"), true);
+        long[] required = config.required.toArray();
+        if(required.length != 0)
+            loadCards(supply, FragmentPicker.FILTER+" AND "+IdFilter.in(TableCard._ID, required),
+                      MaskFilter.join(args_pre, IdFilter.args(required)), true);
         if(isCancelled())
             return cancelResult();
         if (!supply.needsKingdom())
             return successfulResult(supply);
 
-        // Filter out both required and excluded cards
-        String filt = filt_req+filt_card;
-        if(0 < filt_req.length() && 0 < filt_card.length())
-            filt = filt_req+","+filt_card;
-        if(0 < filt.length())
-            filt = TableCard._ID+" NOT IN ("+filt+")";
-
         // Shuffle the remaining cards into the supply
-        loadCards(supply, joinFilters(filt_pre, filt), false);
+        // (filtering out both required and excluded cards)
+        long[] excluded = config.excluded.toArray();
+        loadCards(supply, FragmentPicker.FILTER+" AND "+IdFilter.notIn(TableCard._ID, excluded),
+                  MaskFilter.join(args_pre, IdFilter.args(excluded)), false);
         if(isCancelled())
             return cancelResult();
         if (!supply.needsKingdom())
@@ -98,40 +96,14 @@ class SupplyShuffler extends AsyncTask<Void, Void, Void> {
     }
 
 
-    /** Joins a collection of filters together with AND statements */
-    private static String joinFilters(String... filters) {
-        if(filters.length == 0) return "";
-        if(filters.length == 1) return filters[0];
-
-        // Find the first non-null string in the filter list
-        int i =0;
-        while(filters[i] == null || "".equals(filters[i])) {
-            if(i == filters.length) return "";
-            i++;
-        }
-
-        // Start of the joined filter
-        StringBuilder res = new StringBuilder(filters[i].length());
-        res.append(filters[i]);
-        i++;
-
-        // Add any remaining non-null filters
-        for(;i<filters.length; i++) {
-            if(filters[i] != null && !"".equals(filters[i])) {
-                res.append(" AND ");
-                res.append(filters[i]);
-            }
-        }
-        return res.toString();
-    }
-
-
     /** Load all cards matching the filter and add them to the supply.
      *  @param s The supply object that you want to add to.
      *  @param filter The filter for the cards you wish to add.
+     *  @param filterArgs The arguments of the filter.
      *  @param cardsRequired True if all matching cards must be in the supply.
      *  If this is false, cards will be added to the supply until it has enough kingdom cards. */
-    private void loadCards(ShuffleSupply s, String filter, boolean cardsRequired) {
+    private void loadCards(ShuffleSupply s, String filter, String[] filterArgs,
+                           boolean cardsRequired) {
         // Query the cards in the database
         Cursor c = Pref.getAppContext()
                        .getContentResolver()
@@ -139,7 +111,7 @@ class SupplyShuffler extends AsyncTask<Void, Void, Void> {
                                new String[]{TableCard._ID, TableCard._TYPE_EVENT,
                                             TableCard._TYPE_LANDMARK, TableCard._SET_ID,
                                             TableCard._COST},
-                               filter, null, "random()");
+                               filter, filterArgs, "random()");
         if(c == null) return;
 
         try {
@@ -219,6 +191,8 @@ class SupplyShuffler extends AsyncTask<Void, Void, Void> {
         /** Possible value of {@link #baneStatus}. The bane and the young witch have been set */
         private static final int BANE_ACTIVE = 2;
 
+        /** The preferences this supply is shuffled with. */
+        final ShuffleConfig config;
         /** Minimum amount of kingdom cards needed for this supply to be complete. */
         public int minKingdom;
         /** Maximum amount of special cards allowed. */
@@ -244,9 +218,9 @@ class SupplyShuffler extends AsyncTask<Void, Void, Void> {
 
 
         public ShuffleSupply() {
-            SharedPreferences prefs = Pref.get(Pref.getAppContext());
-            minKingdom = prefs.getInt(Pref.LIMIT_SUPPLY, 10);
-            maxSpecial = prefs.getInt(Pref.LIMIT_EVENTS, 2);
+            config = Pref.config();
+            minKingdom = config.limitSupply;
+            maxSpecial = config.limitEvents;
             kingdom = new ArrayList<>(minKingdom);
             special = new ArrayList<>(maxSpecial);
             costCard = (int)(Math.random() * minKingdom)+1;
@@ -0,0 +1,92 @@
+package ca.marklauman.dominionpicker.database;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+/** Builds the full text search of the card translations.
+ *  Searches are made on the {@link TableCard#TABLE_SEARCH} table, and return rows of the
+ *  {@link TableCard#VIEW_ALL} view. Cards whose names match come first.
+ *  @author Mark Lauman */
+abstract class CardSearch {
+    /** Column of the search results that is 1 if the card name matched the search. */
+    private static final String _NAME_MATCH = "name_match";
+
+    /** Matches the translations found by the search given as argument. */
+    private static final String MATCHES = "SELECT docid FROM " + TableCard.TABLE_SEARCH
+                                          + " WHERE " + TableCard.TABLE_SEARCH + " MATCH ?";
+
+    /** Table clause of a search. Its arguments are the name search and the full search
+     *  (from {@link #args(String, String[])}). */
+    static final String TABLE = TableCard.VIEW_ALL + " JOIN (SELECT "
+                                + TableCard._ID + ", " + TableCard._LANG + ", "
+                                + "rowid IN (" + MATCHES + ") AS " + _NAME_MATCH
+                                + " FROM " + TableCard.TABLE_TRANS
+                                + " WHERE rowid IN (" + MATCHES + "))"
+                                + " USING (" + TableCard._ID + ", " + TableCard._LANG + ")";
+
+
+    /** Build the search table from the card translations, if it is not in the database.
+     *  @param db The core database.
+     *  @return True if the table had to be built. */
+    static boolean build(SQLiteDatabase db) {
+        if(0 < DatabaseUtils.queryNumEntries(db, "sqlite_master", "type='table' AND name=?",
+                                             new String[]{TableCard.TABLE_SEARCH}))
+            return false;
+
+        String columns = TableCard._NAME + ", " + TableCard._TYPE + ", "
+                         + TableCard._TEXT + ", " + TableCard._RULES;
+        db.beginTransaction();
+        try {
+            db.execSQL("CREATE VIRTUAL TABLE " + TableCard.TABLE_SEARCH
+                       + " USING fts4(" + columns + ")");
+            db.execSQL("INSERT INTO " + TableCard.TABLE_SEARCH + " (docid, " + columns + ")"
+                       + " SELECT rowid, " + columns + " FROM " + TableCard.TABLE_TRANS);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return true;
+    }
+
+
+    /** Selection arguments for a search.
+     *  @param search The text typed by the user.
+     *  @param selectionArgs The arguments of the selection applied to the results.
+     *  @return The arguments of the search, followed by the selection arguments. */
+    static String[] args(String search, String[] selectionArgs) {
+        StringBuilder name = new StringBuilder();
+        StringBuilder all = new StringBuilder();
+        for(String term : terms(search)) {
+            name.append(TableCard._NAME).append(':').append(term).append("* ");
+            all.append(term).append("* ");
+        }
+        String[] res = {name.toString().trim(), all.toString().trim()};
+        if(selectionArgs == null) return res;
+        return MaskFilter.join(res, selectionArgs);
+    }
+
+
+    /** Sort order of a search. Name matches come first.
+     *  @param sortOrder The order of the cards within each group (may be null). */
+    static String sort(String sortOrder) {
+        if(sortOrder == null || sortOrder.length() == 0)
+            return _NAME_MATCH + " DESC";
+        return _NAME_MATCH + " DESC, " + sortOrder;
+    }
+
+
+    /** Split the text typed by the user into search terms.
+     *  Anything that is not a letter or digit separates terms, so the user cannot
+     *  write full text search operators by accident. */
+    private static String[] terms(String search) {
+        if(search == null) return new String[0];
+        StringBuilder clean = new StringBuilder(search.length());
+        for(int i = 0; i < search.length(); i++) {
+            char ch = search.charAt(i);
+            clean.append(Character.isLetterOrDigit(ch) ? ch : ' ');
+        }
+        String res = clean.toString().trim();
+        if(res.length() == 0) return new String[0];
+        return res.split(" +");
+    }
+}
@@ -1,10 +1,12 @@
 package ca.marklauman.dominionpicker.database;
 
 import android.content.Context;
-import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
 
 import com.readystatesoftware.sqliteasset.SQLiteAssetHelper;
 
+import ca.marklauman.dominionpicker.BuildConfig;
 import ca.marklauman.dominionpicker.R;
 
 /** Handles connections to the core database.
@@ -14,17 +16,40 @@ class CoreDb extends SQLiteAssetHelper {
     /** The file that the database is stored in. */
     static final String FILE_NAME = "core.db";
 
+    /** True once the search table is known to be in the database. */
+    private volatile boolean searchReady = false;
+
     public CoreDb(Context c) {
         super(c, FILE_NAME, null, c.getResources().getInteger(R.integer.db_ver_core));
         setForcedUpgrade();
     }
 
-    /** Perform an sql query on this database */
-    Cursor query(String table, String[] projection,
-                 String selection, String[] selectionArgs,
-                 String sortOrder, boolean distinct) {
-        return getReadableDatabase()
-                .query(distinct, table, projection, selection, selectionArgs, null, null, sortOrder, null);
+    @Override
+    public synchronized SQLiteDatabase getWritableDatabase() {
+        // Do not race the background install
+        CoreDbInstaller.await();
+        return super.getWritableDatabase();
+    }
+
+    @Override
+    public synchronized SQLiteDatabase getReadableDatabase() {
+        CoreDbInstaller.await();
+        return super.getReadableDatabase();
     }
 
+
+    /** Make sure the card search table is built.
+     *  It is missing on first run and each time the database is replaced by an upgrade.
+     *  Building it takes a moment, so this should be called from a background thread. */
+    void buildSearch() {
+        if(searchReady) return;
+        synchronized(this) {
+            if(searchReady) return;
+            long start = System.nanoTime();
+            if(CardSearch.build(getWritableDatabase()) && BuildConfig.DEBUG)
+                Log.d("ca.marklauman.dominionpicker.CoreDb",
+                      "card search built in " + (System.nanoTime() - start) / 1000000L + "ms");
+            searchReady = true;
+        }
+    }
 }
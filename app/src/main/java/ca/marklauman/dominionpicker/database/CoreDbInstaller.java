@@ -0,0 +1,149 @@
+package ca.marklauman.dominionpicker.database;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+
+import ca.marklauman.dominionpicker.BuildConfig;
+import ca.marklauman.dominionpicker.R;
+
+/** Installs the core database from the app's assets on a background thread.
+ *  The database is installed when it is missing or older than the app's version of it.
+ *  Until the install is done, anything that opens the {@link CoreDb} waits for it.
+ *  If the installer is never started, {@link CoreDb} installs the database itself.
+ *  @author Mark Lauman */
+public abstract class CoreDbInstaller {
+    /** Tag used for the installer's logs. */
+    private static final String TAG = "ca.marklauman.dominionpicker.CoreDbInstaller";
+    /** Location of the compressed database in the assets. */
+    private static final String ASSET = "databases/" + CoreDb.FILE_NAME + ".gz";
+    /** Size of the buffers used to copy the database. */
+    private static final int BUFFER = 128 * 1024;
+
+    /** True once the installer has been started. */
+    private static final AtomicBoolean started = new AtomicBoolean(false);
+    /** Released when the install is done (successful or not). */
+    private static final CountDownLatch done = new CountDownLatch(1);
+
+
+    /** Start installing the core database, if it needs it.
+     *  Only the first call does anything.
+     *  @param context Any context in the app. */
+    public static void start(Context context) {
+        if(!started.compareAndSet(false, true)) return;
+        final Context appContext = context.getApplicationContext();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    install(appContext);
+                } catch(IOException e) {
+                    // CoreDb will try again when it is opened.
+                    Log.e(TAG, "core.db install failed", e);
+                } finally {
+                    done.countDown();
+                }
+            }
+        }, "CoreDbInstaller").start();
+    }
+
+
+    /** Wait for the install to finish. Returns at once if the installer was never started. */
+    static void await() {
+        if(!started.get()) return;
+        boolean interrupted = false;
+        while(true) {
+            try {
+                done.await();
+                break;
+            } catch(InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if(interrupted) Thread.currentThread().interrupt();
+    }
+
+
+    /** Install the core database if it is missing or out of date. */
+    private static void install(Context context) throws IOException {
+        long start = System.nanoTime();
+        int version = context.getResources().getInteger(R.integer.db_ver_core);
+        File target = context.getDatabasePath(CoreDb.FILE_NAME);
+        if(version <= getVersion(target)) return;
+
+        // Decompress into a temporary file next to the database
+        File dir = target.getParentFile();
+        if(!dir.exists() && !dir.mkdirs())
+            throw new IOException("cannot create " + dir);
+        File temp = new File(dir, CoreDb.FILE_NAME + ".tmp");
+        long size = 0L;
+        ReadableByteChannel in = Channels.newChannel(
+                new GZIPInputStream(context.getAssets().open(ASSET), BUFFER));
+        try {
+            FileChannel out = new FileOutputStream(temp).getChannel();
+            try {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER);
+                while(in.read(buffer) != -1) {
+                    buffer.flip();
+                    while(buffer.hasRemaining())
+                        size += out.write(buffer);
+                    buffer.clear();
+                }
+                out.force(false);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+
+        // Mark it with its version, so CoreDb does not install it again.
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(temp.getPath(), null,
+                                                        SQLiteDatabase.OPEN_READWRITE);
+        try {
+            db.setVersion(version);
+        } finally {
+            db.close();
+        }
+
+        // Swap it in for the old database
+        //noinspection ResultOfMethodCallIgnored
+        new File(target.getPath() + "-journal").delete();
+        if(!temp.renameTo(target)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw new IOException("cannot replace " + target);
+        }
+        if(BuildConfig.DEBUG)
+            Log.d(TAG, "core.db installed in " + (System.nanoTime() - start) / 1000000L
+                       + "ms (" + size + " bytes)");
+    }
+
+
+    /** Get the version of an installed database.
+     *  @return The version of the database, or 0 if it is missing or unreadable. */
+    private static int getVersion(File file) {
+        if(!file.exists()) return 0;
+        SQLiteDatabase db = null;
+        try {
+            db = SQLiteDatabase.openDatabase(file.getPath(), null,
+                                             SQLiteDatabase.OPEN_READONLY);
+            return db.getVersion();
+        } catch(RuntimeException e) {
+            return 0;
+        } finally {
+            if(db != null) db.close();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package ca.marklauman.dominionpicker.database;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
@@ -15,6 +16,20 @@ public class DataDb extends SQLiteOpenHelper {
     /** The internal name of the history table, which stores
      *  all shuffles by the user.                         */
     public static final String TABLE_HISTORY = "history";
+    /** The internal name of the history card table, which stores
+     *  one row for each card in each shuffle of the history table. */
+    public static final String TABLE_HISTORY_CARD = "history_card";
+    /** Index of the history card table used to find the shuffles containing a card. */
+    private static final String INDEX_HISTORY_CARD = "history_card_card";
+    /** Trigger that removes a shuffle's cards when it is deleted from the history table. */
+    private static final String TRIGGER_HISTORY_DELETE = "history_delete_cards";
+
+    /** Version of the database that added the {@link #TABLE_HISTORY_CARD}. */
+    private static final int VER_HISTORY_CARD = 12;
+    /** Number of shuffles removed by each transaction when pruning the history. */
+    private static final int PRUNE_BATCH = 200;
+    /** Value of {@code PRAGMA auto_vacuum} for incremental vacuum mode. */
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
 
 
     /** Column storing the timestamp of the shuffle.
@@ -40,6 +55,60 @@ public class DataDb extends SQLiteOpenHelper {
      *  The card is set to -1 if there is no bane card.<br/>
      *  History Table, Java Long */
     public static final String _H_BANE = TableSupply._BANE;
+    /** Number of cards in this shuffle. Computed from the history card table,
+     *  so it may only be used in a projection of the history table.<br/>
+     *  History Table, Java Integer */
+    public static final String _H_CARD_COUNT = "card_count";
+
+
+    /** Column storing the timestamp of the shuffle this card was in.
+     *  History Card Table, Java Long */
+    public static final String _HC_TIME = "time";
+    /** Column storing the id of the card.
+     *  History Card Table, Java Long */
+    public static final String _HC_CARD = "card_id";
+    /** Column storing the role of the card in the shuffle.
+     *  One of {@link #ROLE_SUPPLY} or {@link #ROLE_BANE}.
+     *  History Card Table, Java Integer */
+    public static final String _HC_ROLE = "role";
+    /** Value of {@link #_HC_ROLE} for cards in the supply. */
+    public static final int ROLE_SUPPLY = 0;
+    /** Value of {@link #_HC_ROLE} for the bane card.
+     *  The bane card also has a row with the {@link #ROLE_SUPPLY} role. */
+    public static final int ROLE_BANE = 1;
+
+    /** Removes the history card rows of a shuffle. The argument is the shuffle's time. */
+    private static final String SQL_DELETE_CARDS = "DELETE FROM " + TABLE_HISTORY_CARD
+                                                   + " WHERE " + _HC_TIME + "=?";
+    /** Adds a history card row. The arguments are the time, card and role. */
+    private static final String SQL_INSERT_CARD = "INSERT OR IGNORE INTO " + TABLE_HISTORY_CARD
+                                                  + " (" + _HC_TIME + ", " + _HC_CARD + ", "
+                                                  + _HC_ROLE + ") VALUES (?,?,?)";
+    /** Finds the time of a non-favorite shuffle. The argument is how many newer
+     *  non-favorite shuffles there are. */
+    private static final String SQL_PRUNE_CUTOFF = "SELECT " + _H_TIME + " FROM " + TABLE_HISTORY
+                                                   + " WHERE " + _H_NAME + " IS NULL"
+                                                   + " ORDER BY " + _H_TIME + " DESC"
+                                                   + " LIMIT 1 OFFSET ?";
+    /** Removes one batch of non-favorite shuffles. The argument is the newest time removed. */
+    private static final String SQL_PRUNE_BATCH = "DELETE FROM " + TABLE_HISTORY
+                                                  + " WHERE " + _H_TIME + " IN (SELECT "
+                                                  + _H_TIME + " FROM " + TABLE_HISTORY
+                                                  + " WHERE " + _H_NAME + " IS NULL"
+                                                  + " AND " + _H_TIME + "<=?"
+                                                  + " LIMIT " + PRUNE_BATCH + ")";
+
+    /** Selection of the history table matching shuffles that contain a card.
+     *  Its one argument is the id of the card. Answered from the history card index. */
+    public static final String SEL_HAS_CARD = _H_TIME + " IN (SELECT " + _HC_TIME
+                                              + " FROM " + TABLE_HISTORY_CARD
+                                              + " WHERE " + _HC_CARD + "=?)";
+    /** Projection entry that computes {@link #_H_CARD_COUNT}. */
+    public static final String COUNT_CARDS = "(SELECT count(*) FROM " + TABLE_HISTORY_CARD
+                                             + " WHERE " + TABLE_HISTORY_CARD + "." + _HC_TIME
+                                             + "=" + TABLE_HISTORY + "." + _H_TIME
+                                             + " AND " + TABLE_HISTORY_CARD + "." + _HC_ROLE
+                                             + "=" + ROLE_SUPPLY + ") AS " + _H_CARD_COUNT;
 
 
     public DataDb(Context c) {
@@ -56,17 +125,145 @@ public class DataDb extends SQLiteOpenHelper {
                     + _H_HIGH_COST + " INTEGER, "
                     + _H_SHELTERS + " INTEGER, "
                     + _H_BANE + " INTEGER DEFAULT -1);");
+        createHistoryCard(db);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // This is version 1 of the data db. There are no upgrades yet.
+        // Split the cards of every shuffle into the history card table.
+        if(oldVersion < VER_HISTORY_CARD) {
+            createHistoryCard(db);
+            StatementCache statements = new StatementCache();
+            try {
+                writeCards(db, statements, null, null);
+            } finally {
+                statements.close();
+            }
+        }
     }
 
     @Override
     public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         // Since future structures are unknown, just flash the known tables.
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_HISTORY_CARD);
         db.execSQL("DROP TABLE " + TABLE_HISTORY);
         onCreate(db);
     }
-}
\ No newline at end of file
+
+
+    /** Create the history card table, its index and the trigger that keeps it
+     *  in line with the history table. */
+    private static void createHistoryCard(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_HISTORY_CARD + " ("
+                   + _HC_TIME + " INTEGER NOT NULL, "
+                   + _HC_CARD + " INTEGER NOT NULL, "
+                   + _HC_ROLE + " INTEGER NOT NULL DEFAULT " + ROLE_SUPPLY + ", "
+                   + "PRIMARY KEY (" + _HC_TIME + ", " + _HC_ROLE + ", " + _HC_CARD + "));");
+        db.execSQL("CREATE INDEX " + INDEX_HISTORY_CARD + " ON " + TABLE_HISTORY_CARD
+                   + " (" + _HC_CARD + ", " + _HC_TIME + ");");
+        db.execSQL("CREATE TRIGGER " + TRIGGER_HISTORY_DELETE
+                   + " AFTER DELETE ON " + TABLE_HISTORY + " BEGIN"
+                   + " DELETE FROM " + TABLE_HISTORY_CARD
+                   + " WHERE " + _HC_TIME + "=old." + _H_TIME + ";"
+                   + " END;");
+    }
+
+
+    /** Rewrite the history card rows of the shuffles matching a selection.
+     *  Must be called inside a transaction, after the history rows are written.
+     *  @param db The database to write to.
+     *  @param statements The statements used to write the rows.
+     *  @param selection Selection of the history table (null for all shuffles).
+     *  @param selectionArgs Arguments for the selection. */
+    static void writeCards(SQLiteDatabase db, StatementCache statements,
+                           String selection, String[] selectionArgs) {
+        Cursor c = db.query(TABLE_HISTORY, new String[]{_H_TIME, _H_CARDS, _H_BANE},
+                            selection, selectionArgs, null, null, null);
+        try {
+            while(c.moveToNext()) {
+                long time = c.getLong(0);
+                statements.executeUpdateDelete(db, SQL_DELETE_CARDS, time);
+
+                String cards = c.getString(1);
+                if(cards != null) {
+                    for(String card : cards.split(",")) {
+                        long id;
+                        try {
+                            id = Long.parseLong(card.trim());
+                        } catch(NumberFormatException ignored) {
+                            continue;
+                        }
+                        statements.executeInsert(db, SQL_INSERT_CARD, time, id, ROLE_SUPPLY);
+                    }
+                }
+                if(!c.isNull(2) && c.getLong(2) != -1L)
+                    statements.executeInsert(db, SQL_INSERT_CARD, time, c.getLong(2), ROLE_BANE);
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+
+    /** Remove old shuffles from the history table. Favorites are never removed.
+     *  Shuffles are deleted in small batches, each in its own transaction,
+     *  so other queries are not locked out while this runs.
+     *  @param db The database to prune.
+     *  @param statements The statements used to prune it.
+     *  @param maxRows Number of non-favorite shuffles to keep (0 for no limit).
+     *  @param minTime Shuffles older than this timestamp are removed (0 for no limit).
+     *  @return The number of shuffles removed. */
+    static int pruneHistory(SQLiteDatabase db, StatementCache statements,
+                            int maxRows, long minTime) {
+        // Find the newest shuffle that must go
+        long cutoff = minTime - 1L;
+        if(0 < maxRows)
+            cutoff = Math.max(cutoff, statements.queryForLong(db, SQL_PRUNE_CUTOFF, -1L,
+                                                              maxRows));
+        if(cutoff < 0L) return 0;
+
+        // Remove everything up to the cutoff, one batch at a time
+        int total = 0;
+        int change;
+        do {
+            db.beginTransaction();
+            try {
+                change = statements.executeUpdateDelete(db, SQL_PRUNE_BATCH, cutoff);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            total += change;
+        } while(change == PRUNE_BATCH);
+        return total;
+    }
+
+
+    /** Return the free pages of the database file to the file system.
+     *  The first time this is called, the database is switched to incremental
+     *  vacuum mode, which needs a full {@code VACUUM}. After that only the free
+     *  pages are released. Must not be called inside a transaction.
+     *  @param db The database to vacuum.
+     *  @param statements The statements used to read its pragmas. */
+    static void vacuum(SQLiteDatabase db, StatementCache statements) {
+        if(getPragma(db, statements, "auto_vacuum") != AUTO_VACUUM_INCREMENTAL) {
+            db.execSQL("PRAGMA auto_vacuum=" + AUTO_VACUUM_INCREMENTAL);
+            db.execSQL("VACUUM");
+        } else if(0 < getPragma(db, statements, "freelist_count")) {
+            // Each row returned by the pragma is a page being released.
+            Cursor c = db.rawQuery("PRAGMA incremental_vacuum", null);
+            try {
+                //noinspection StatementWithEmptyBody
+                while(c.moveToNext());
+            } finally {
+                c.close();
+            }
+        }
+    }
+
+
+    /** Read an integer pragma from a database. */
+    static long getPragma(SQLiteDatabase db, StatementCache statements, String pragma) {
+        return statements.queryForLong(db, "PRAGMA " + pragma, 0L);
+    }
+}
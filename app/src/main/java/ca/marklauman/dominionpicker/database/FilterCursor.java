@@ -0,0 +1,277 @@
+package ca.marklauman.dominionpicker.database;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+
+import ca.marklauman.dominionpicker.settings.ShuffleConfig;
+import ca.marklauman.dominionpicker.userinterface.recyclerview.SectionIndex;
+
+/** A cursor of cards from {@link TableCard} that shows only some of its rows.
+ *  The columns needed by {@link ShuffleConfig#allows} are read out of the cards once,
+ *  when the cursor is made. After that the cards may be filtered any number of times
+ *  by {@link #filter(ShuffleConfig)} without going back to the database,
+ *  and filtering may be done on any thread.
+ *  The section label of each card is read at the same time, so the sections of a view
+ *  ({@link #sections()}) are found without going back to the database either.
+ *  <p>Each filter result is a new view over the same cards, so moving one view moves
+ *  the others. Every read must follow a move on the view being read,
+ *  and closing any view closes the cards for all of them.</p>
+ *  @author Mark Lauman */
+public class FilterCursor extends CursorWrapper {
+    /** The columns that must be in the cards to filter them. */
+    private static final String[] COLS_FILTER
+            = {TableCard._ID, TableCard._SET_ID, TableCard._POT, TableCard._COST_VAL,
+               TableCard._DEBT, TableCard._META_CURSER};
+
+    /** The filter columns of every card, shared by all views of the cards. */
+    private final Cards cards;
+    /** The row of the cards at each position of this view. */
+    private final int[] rows;
+    /** The current position of this view. */
+    private int pos = -1;
+
+
+    /** Read the filter columns of some cards. Every card is shown until filtered.
+     *  This walks the whole cursor, so it should be done in the background
+     *  (in a loader, for example).
+     *  @param cursor Cards from {@link TableCard}, with the columns from
+     *                {@link #projection(String...)}.
+     *  @param sortKeys The columns the cards are sorted by, in order
+     *                  (from {@link ShuffleConfig#cardSortKeys()}). The sections are
+     *                  labelled by the first of these that splits the cards up. */
+    public FilterCursor(Cursor cursor, int[] sortKeys) {
+        super(cursor);
+        cards = new Cards(cursor, sortKeys);
+        rows = new int[cards.ids.length];
+        for(int i = 0; i < rows.length; i++) rows[i] = i;
+    }
+
+
+    /** Create a view of some of the cards. */
+    private FilterCursor(FilterCursor base, int[] rows) {
+        super(base.getWrappedCursor());
+        cards = base.cards;
+        this.rows = rows;
+    }
+
+
+    /** Get a projection for the cards of this cursor.
+     *  @param columns The columns needed by whatever displays the cards.
+     *  @return The columns, followed by any filter columns that are not among them. */
+    public static String[] projection(String... columns) {
+        ArrayList<String> res = new ArrayList<>(Arrays.asList(columns));
+        for(String col : COLS_FILTER)
+            if(!res.contains(col)) res.add(col);
+        return res.toArray(new String[res.size()]);
+    }
+
+
+    /** Get a view of the cards allowed by a config. Only the cards are read, so this
+     *  may be called from any thread while this cursor is in use elsewhere.
+     *  @param config The config to filter by.
+     *  @return A view of the allowed cards, in the same order as this cursor. */
+    public FilterCursor filter(ShuffleConfig config) {
+        int[] allowed = new int[cards.ids.length];
+        int count = 0;
+        for(int row = 0; row < allowed.length; row++) {
+            if(config.allows(cards.sets[row], cards.potions[row], cards.costs[row],
+                             cards.debts[row], cards.cursers[row]))
+                allowed[count++] = row;
+        }
+        return new FilterCursor(this, Arrays.copyOf(allowed, count));
+    }
+
+
+    /** True if this cursor and another are views of the same cards. */
+    public boolean sameCards(FilterCursor other) {
+        return other != null && cards == other.cards;
+    }
+
+
+    /** Find the sections of this view. This walks every card in the view,
+     *  so it should be done in the background. It does not move the cursor.
+     *  @return The sections of this view, which are empty if the cards have no labels. */
+    public SectionIndex sections() {
+        if(cards.labels == null) return SectionIndex.EMPTY;
+        String[] labels = new String[rows.length];
+        for(int i = 0; i < rows.length; i++)
+            labels[i] = cards.labels[rows[i]];
+        return SectionIndex.build(labels);
+    }
+
+
+    /** Get the id of the card at a position of this view.
+     *  This does not move the cursor and may be called from any thread. */
+    public long getId(int position) {
+        return cards.ids[rows[position]];
+    }
+
+
+    @Override
+    public int getCount() {
+        return rows.length;
+    }
+
+    @Override
+    public int getPosition() {
+        return pos;
+    }
+
+    @Override
+    public boolean moveToPosition(int position) {
+        if(position < 0) {
+            pos = -1;
+            return false;
+        }
+        if(rows.length <= position) {
+            pos = rows.length;
+            return false;
+        }
+        pos = position;
+        return super.moveToPosition(rows[position]);
+    }
+
+    @Override
+    public boolean move(int offset) {
+        return moveToPosition(pos + offset);
+    }
+
+    @Override
+    public boolean moveToFirst() {
+        return moveToPosition(0);
+    }
+
+    @Override
+    public boolean moveToLast() {
+        return moveToPosition(rows.length - 1);
+    }
+
+    @Override
+    public boolean moveToNext() {
+        return moveToPosition(pos + 1);
+    }
+
+    @Override
+    public boolean moveToPrevious() {
+        return moveToPosition(pos - 1);
+    }
+
+    @Override
+    public boolean isFirst() {
+        return rows.length != 0 && pos == 0;
+    }
+
+    @Override
+    public boolean isLast() {
+        return rows.length != 0 && pos == rows.length - 1;
+    }
+
+    @Override
+    public boolean isBeforeFirst() {
+        return rows.length == 0 || pos == -1;
+    }
+
+    @Override
+    public boolean isAfterLast() {
+        return rows.length == 0 || pos == rows.length;
+    }
+
+
+    /** The filter columns of some cards, by row. Never changed once read. */
+    private static class Cards {
+        final long[] ids;
+        final int[] sets;
+        final boolean[] potions;
+        final int[] costs;
+        final int[] debts;
+        final boolean[] cursers;
+        /** The section label of each card, or null if no sort column splits them up. */
+        final String[] labels;
+
+        Cards(Cursor cursor, int[] sortKeys) {
+            int count = cursor.getCount();
+            ids = new long[count];
+            sets = new int[count];
+            potions = new boolean[count];
+            costs = new int[count];
+            debts = new int[count];
+            cursers = new boolean[count];
+            int _id = cursor.getColumnIndex(TableCard._ID);
+            int _set = cursor.getColumnIndex(TableCard._SET_ID);
+            int _pot = cursor.getColumnIndex(TableCard._POT);
+            int _cost = cursor.getColumnIndex(TableCard._COST_VAL);
+            int _debt = cursor.getColumnIndex(TableCard._DEBT);
+            int _curser = cursor.getColumnIndex(TableCard._META_CURSER);
+            cursor.moveToPosition(-1);
+            while(cursor.moveToNext()) {
+                int row = cursor.getPosition();
+                ids[row] = cursor.getLong(_id);
+                sets[row] = cursor.getInt(_set);
+                potions[row] = cursor.getInt(_pot) != 0;
+                costs[row] = cursor.getInt(_cost);
+                debts[row] = cursor.getInt(_debt);
+                cursers[row] = cursor.getInt(_curser) != 0;
+            }
+            labels = readLabels(cursor, sortKeys);
+        }
+
+
+        /** Read the labels of the first sort column with more than one section.
+         *  Usually this is the first column, so the cursor is walked only once. */
+        private static String[] readLabels(Cursor cursor, int[] sortKeys) {
+            String[] labels = new String[cursor.getCount()];
+            for(int key : sortKeys) {
+                String col = labelColumn(key);
+                int index = col == null ? -1 : cursor.getColumnIndex(col);
+                if(index == -1) continue;
+                boolean split = false;
+                cursor.moveToPosition(-1);
+                while(cursor.moveToNext()) {
+                    int row = cursor.getPosition();
+                    labels[row] = label(key, cursor.getString(index));
+                    if(row != 0 && !split)
+                        split = labels[row] == null ? labels[row - 1] != null
+                                                    : !labels[row].equals(labels[row - 1]);
+                }
+                if(split) return labels;
+            }
+            return null;
+        }
+
+
+        /** The column labelling the sections of a sort key,
+         *  or null if that key does not make sections. */
+        private static String labelColumn(int key) {
+            switch(key) {
+                case ShuffleConfig.SORT_SET:
+                case ShuffleConfig.SORT_RELEASE:  return TableCard._SET_NAME;
+                case ShuffleConfig.SORT_NAME:     return TableCard._NAME;
+                case ShuffleConfig.SORT_COST:     return TableCard._COST;
+                case ShuffleConfig.SORT_TYPE:     return TableCard._TYPE;
+                case ShuffleConfig.SORT_LANGUAGE: return TableCard._LANG;
+                default:                          return null;
+            }
+        }
+
+
+        /** The section label of a card, from the value of its {@link #labelColumn}. */
+        private static String label(int key, String value) {
+            if(value == null) return null;
+            switch(key) {
+                case ShuffleConfig.SORT_NAME:
+                    // Names are split up by their first letter
+                    if(value.length() == 0) return value;
+                    int end = value.offsetByCodePoints(0, 1);
+                    return value.substring(0, end).toUpperCase(Locale.getDefault());
+                case ShuffleConfig.SORT_LANGUAGE:
+                    return value.toUpperCase(Locale.ENGLISH);
+                default:
+                    return value;
+            }
+        }
+    }
+}
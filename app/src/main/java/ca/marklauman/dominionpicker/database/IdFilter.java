@@ -0,0 +1,77 @@
+package ca.marklauman.dominionpicker.database;
+
+import java.util.Arrays;
+
+/** Builds selections that test an id column against a list of ids passed as arguments.
+ *  Unlike a {@link MaskFilter}, the result is a plain {@code IN (?,?,...)} list,
+ *  so SQLite can look the ids up in the column's index instead of testing every row.
+ *  <p>To keep the number of different selection texts small, the list is padded to the
+ *  next power of two (at least {@link #MIN_ARGS}) with an id that matches nothing.
+ *  The few texts that result are all SQLite ever compiles for a column.</p>
+ *  <p>SQLite limits a statement to 999 arguments, so lists of more than
+ *  {@link #MAX_ARGS} ids are bound as a single {@link MaskFilter} mask instead.
+ *  Those are tested against every row, but such long lists only come up when
+ *  excluding most of the cards, where every row is scanned anyway.</p>
+ *  The column tested must only contain non-negative integers.
+ *  @author Mark Lauman */
+public abstract class IdFilter {
+    /** The fewest arguments a selection takes. Supplies and required cards fit in this. */
+    private static final int MIN_ARGS = 16;
+    /** The most arguments a selection takes. Longer lists are bound as a mask.
+     *  This leaves room below SQLite's limit of 999 for the rest of the selection. */
+    private static final int MAX_ARGS = 256;
+    /** The argument used to pad the list. No id is negative, so it matches nothing. */
+    private static final String PADDING = "-1";
+
+
+    /** Selection matching rows whose id is in the arguments.
+     *  @param column The column to test.
+     *  @param ids The ids the selection will be used with.
+     *  @return A selection with {@link #args(long[])} arguments. */
+    public static String in(String column, long[] ids) {
+        if(MAX_ARGS < ids.length) return MaskFilter.in(column);
+        return column + " IN (" + placeholders(size(ids.length)) + ")";
+    }
+
+
+    /** Selection matching rows whose id is not in the arguments.
+     *  @param column The column to test.
+     *  @param ids The ids the selection will be used with.
+     *  @return A selection with {@link #args(long[])} arguments. */
+    public static String notIn(String column, long[] ids) {
+        if(MAX_ARGS < ids.length) return MaskFilter.notIn(column);
+        return column + " NOT IN (" + placeholders(size(ids.length)) + ")";
+    }
+
+
+    /** Get the arguments of a selection from {@link #in} or {@link #notIn}.
+     *  @param ids The ids to test for.
+     *  @return The ids, padded to the number of arguments in the selection,
+     *          or a mask of the ids if there are too many of them. */
+    public static String[] args(long[] ids) {
+        if(MAX_ARGS < ids.length) return new String[]{MaskFilter.mask(ids)};
+        String[] res = new String[size(ids.length)];
+        for(int i = 0; i < ids.length; i++)
+            res[i] = Long.toString(ids[i]);
+        Arrays.fill(res, ids.length, res.length, PADDING);
+        return res;
+    }
+
+
+    /** The number of arguments used for some number of ids. */
+    private static int size(int count) {
+        int size = MIN_ARGS;
+        while(size < count) size *= 2;
+        return size;
+    }
+
+
+    /** A list of {@code count} placeholders, separated by commas. */
+    private static String placeholders(int count) {
+        StringBuilder res = new StringBuilder(count * 2);
+        res.append('?');
+        for(int i = 1; i < count; i++)
+            res.append(",?");
+        return res.toString();
+    }
+}
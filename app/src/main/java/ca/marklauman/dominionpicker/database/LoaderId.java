@@ -31,4 +31,6 @@ public abstract class LoaderId {
     public static final int RULES_DEBT = 13;
     /** The card info screen's loader */
     public static final int INFO_CARD = 14;
+    /** The card info screen's loader for the shuffles with the card */
+    public static final int INFO_HISTORY = 15;
 }
\ No newline at end of file
@@ -0,0 +1,77 @@
+package ca.marklauman.dominionpicker.database;
+
+import java.util.Arrays;
+
+/** Builds selections that test a column against a set of values passed as an argument.
+ *  The set is bound as a mask string: a string of '0' and '1' characters where the
+ *  character at index {@code n} is '1' if {@code n} is in the set.
+ *  This keeps the selection text the same whatever the set contains, so SQLite
+ *  is given the same statement to compile every time.
+ *  The column tested must only contain non-negative integers.
+ *  <p>Every row is tested against the mask, so this is only for columns with few values
+ *  (sets, costs and debts) in selections that scan the cards anyway.
+ *  Use an {@link IdFilter} for card ids, which can use the primary key.</p>
+ *  @author Mark Lauman */
+public abstract class MaskFilter {
+
+    /** Selection matching rows whose value for the column is in the mask argument.
+     *  @param column The column to test.
+     *  @return A selection with one argument: a mask from {@link #mask(String)}. */
+    public static String in(String column) {
+        return "substr(?," + column + "+1,1)='1'";
+    }
+
+
+    /** Selection matching rows whose value for the column is not in the mask argument.
+     *  @param column The column to test.
+     *  @return A selection with one argument: a mask from {@link #mask(String)}. */
+    public static String notIn(String column) {
+        return "substr(?," + column + "+1,1)<>'1'";
+    }
+
+
+    /** Build a mask out of a comma-separated list of values.
+     *  Empty entries and entries that are not numbers are ignored.
+     *  @param values The values in the set, such as those saved in the preferences.
+     *  @return The mask for those values. */
+    public static String mask(String values) {
+        if(values == null || values.length() == 0) return "";
+        String[] split = values.split(",");
+        long[] parsed = new long[split.length];
+        int count = 0;
+        for(String val : split) {
+            try {
+                parsed[count] = Long.parseLong(val.trim());
+                count++;
+            } catch(NumberFormatException ignored) {}
+        }
+        return mask(Arrays.copyOf(parsed, count));
+    }
+
+
+    /** Build a mask out of a set of values.
+     *  Negative values are ignored.
+     *  @param values The values in the set.
+     *  @return The mask for those values. */
+    public static String mask(long... values) {
+        long max = -1L;
+        for(long val : values)
+            if(max < val) max = val;
+        char[] mask = new char[(int)(max + 1L)];
+        Arrays.fill(mask, '0');
+        for(long val : values)
+            if(0L <= val) mask[(int)val] = '1';
+        return new String(mask);
+    }
+
+
+    /** Join two sets of selection arguments together.
+     *  @param first The arguments that come first in the selection.
+     *  @param more The arguments that follow them.
+     *  @return All the arguments in order. */
+    public static String[] join(String[] first, String... more) {
+        String[] res = Arrays.copyOf(first, first.length + more.length);
+        System.arraycopy(more, 0, res, first.length, more.length);
+        return res;
+    }
+}
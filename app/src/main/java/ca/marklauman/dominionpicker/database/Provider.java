@@ -3,21 +3,31 @@ package ca.marklauman.dominionpicker.database;
 import android.content.ContentProvider;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.ContentUris;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Bundle;
 import android.support.annotation.NonNull;
+import android.util.Log;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.Set;
 
 import ca.marklauman.dominionpicker.BuildConfig;
+import ca.marklauman.dominionpicker.settings.Pref;
 
 /** This content provider is where all database queries in this app end up.
  *  @author Mark Lauman */
 @SuppressWarnings("WeakerAccess")
 public class Provider extends ContentProvider {
 
+    /** Tag used for this provider's debug logs. */
+    private static final String TAG = "ca.marklauman.dominionpicker.Provider";
+
     /** The authority this provider operates over */
     public static final String AUTHORITY = BuildConfig.APPLICATION_ID;
 
@@ -42,6 +52,16 @@ public class Provider extends ContentProvider {
     private static final int ID_SUPPLY = 5;
     /** Internal id for the history table's URI. */
     private static final int ID_HIST = 6;
+    /** Internal id for a single card in the combined card table. */
+    private static final int ID_CARD_ALL_ID = 7;
+    /** Internal id for a single supply in the supply table. */
+    private static final int ID_SUPPLY_ID = 8;
+    /** Internal id for a single shuffle in the history table. */
+    private static final int ID_HIST_ID = 9;
+    /** Internal id for the shuffles in the history table containing a card. */
+    private static final int ID_HIST_CARD = 10;
+    /** Internal id for the card search URI. */
+    private static final int ID_CARD_SEARCH = 11;
 
     /** URI to access the card data table */
     public static final Uri URI_CARD_DATA = Uri.parse("content://"+AUTHORITY+"/cardData");
@@ -49,18 +69,90 @@ public class Provider extends ContentProvider {
     public static final Uri URI_CARD_DATA_U = Uri.parse("content://"+AUTHORITY+"/cardDataUnique");
     /** URI to access the card trans table */
     public static final Uri URI_CARD_SET = Uri.parse("content://"+AUTHORITY+"/cardSet");
-    /** URI to access the combination of all card tables */
+    /** URI to access the combination of all card tables.
+     *  Append a card id to look up a single card. */
     public static final Uri URI_CARD_ALL = Uri.parse("content://"+AUTHORITY+"/cardAll");
-    /** URI to access the sample supply table */
+    /** URI to search the combination of all card tables.
+     *  The search is passed as the {@link #PARAM_SEARCH} query parameter.
+     *  Cards whose names match come first. */
+    public static final Uri URI_CARD_SEARCH = Uri.parse("content://"+AUTHORITY+"/cardSearch");
+    /** URI to access the sample supply table.
+     *  Append a supply id to look up a single supply. */
     public static final Uri URI_SUPPLY = Uri.parse("content://"+AUTHORITY+"/supply");
-    /** URI to access the history table */
+    /** URI to access the history table.
+     *  Append a timestamp to look up, update or delete a single shuffle.
+     *  Changes to a single shuffle are notified on that shuffle's uri only. */
     public static final Uri URI_HIST = Uri.parse("content://"+AUTHORITY+"/history");
+    /** Notification uri of cursors over the whole history table.
+     *  Only changes to many shuffles at once are notified here, so lists of shuffles
+     *  must observe {@link #URI_HIST} themselves to hear about single shuffles. */
+    public static final Uri URI_HIST_ALL = Uri.withAppendedPath(URI_HIST, "all");
+    /** URI to find the shuffles in the history table that contain a card.
+     *  Append the id of the card. The rows are shuffles, like those of {@link #URI_HIST},
+     *  and the cursors are notified on {@link #URI_HIST_ALL}. */
+    public static final Uri URI_HIST_CARD = Uri.withAppendedPath(URI_HIST, "card");
+
+    /** Query parameter limiting the number of rows returned by a query.
+     *  Its value is an sql LIMIT clause, such as "50". */
+    public static final String PARAM_LIMIT = "limit";
+
+    /** Query parameter of {@link #URI_CARD_SEARCH} containing the text searched for.
+     *  Each word matches any word that starts with it. */
+    public static final String PARAM_SEARCH = "q";
+
+    /** Method passed to {@link #call} to build the card search table ahead of time. */
+    public static final String METHOD_BUILD_SEARCH = "buildSearch";
+    /** Method passed to {@link #call} to get the hit rate of the core query result cache.
+     *  The result contains {@link #EXTRA_HITS}, {@link #EXTRA_MISSES} and {@link #EXTRA_BYTES}. */
+    public static final String METHOD_CACHE_STATS = "cacheStats";
+    /** Result of {@link #METHOD_CACHE_STATS}: number of queries answered from the cache. */
+    public static final String EXTRA_HITS = "hits";
+    /** Result of {@link #METHOD_CACHE_STATS}: number of queries that missed the cache. */
+    public static final String EXTRA_MISSES = "misses";
+    /** Result of {@link #METHOD_CACHE_STATS}: approximate size of the cache in bytes. */
+    public static final String EXTRA_BYTES = "bytes";
+
+    /** Method passed to {@link #call} to get the latency histograms of this provider.
+     *  The result contains {@link #EXTRA_JSON}. */
+    public static final String METHOD_QUERY_STATS = "queryStats";
+    /** Result of {@link #METHOD_QUERY_STATS}: the histograms of each operation
+     *  on each uri, as json. */
+    public static final String EXTRA_JSON = "json";
+
+    /** Method passed to {@link #call} to remove old shuffles from the history.
+     *  The limits are passed in the extras as {@link #EXTRA_MAX_ROWS} and
+     *  {@link #EXTRA_MIN_TIME}. The number of shuffles removed is returned
+     *  as {@link #EXTRA_DELETED}. */
+    public static final String METHOD_PRUNE_HISTORY = "pruneHistory";
+    /** Extra of {@link #METHOD_PRUNE_HISTORY}: number of non-favorite shuffles to keep. */
+    public static final String EXTRA_MAX_ROWS = "maxRows";
+    /** Extra of {@link #METHOD_PRUNE_HISTORY}: shuffles older than this time are removed. */
+    public static final String EXTRA_MIN_TIME = "minTime";
+    /** Result of {@link #METHOD_PRUNE_HISTORY}: number of shuffles removed. */
+    public static final String EXTRA_DELETED = "deleted";
 
     /** Used to match URIs to tables. */
     UriMatcher matcher;
-    /** Handle to the core database. */
+    /** The sql text of every query, built once per query shape. */
+    private final QueryTextCache queries = new QueryTextCache();
+    /** Statements compiled for the writes to the history. */
+    private final StatementCache statements = new StatementCache();
+    /** Latency of the operations on each uri. */
+    private final QueryStats stats = new QueryStats();
+    /** Results of recent core database queries. */
+    private final QueryResultCache results = new QueryResultCache();
+    /** Clears the {@link #results} when the card language changes. */
+    private final Pref.Listener languageListener = new Pref.Listener() {
+        @Override
+        public void onPreferencesChanged(Set<String> keys) {
+            if(keys.contains(Pref.COMP_LANG)) results.clear();
+        }
+    };
+    /** True once the {@link #languageListener} is registered. */
+    private volatile boolean listening = false;
+    /** Handle to the core database. Created on first use by {@link #coreDb()}. */
 	private CoreDb core_db;
-    /** Handle to the data database */
+    /** Handle to the data database. Created on first use by {@link #dataDb()}. */
     private DataDb data_db;
 
 
@@ -74,28 +166,22 @@ public class Provider extends ContentProvider {
         matcher.addURI(AUTHORITY, "cardAll", ID_CARD_ALL);
         matcher.addURI(AUTHORITY, "supply", ID_SUPPLY);
         matcher.addURI(AUTHORITY, "history", ID_HIST);
+        matcher.addURI(AUTHORITY, "cardAll/#", ID_CARD_ALL_ID);
+        matcher.addURI(AUTHORITY, "supply/#", ID_SUPPLY_ID);
+        matcher.addURI(AUTHORITY, "history/#", ID_HIST_ID);
+        matcher.addURI(AUTHORITY, "history/card/#", ID_HIST_CARD);
+        matcher.addURI(AUTHORITY, "cardSearch", ID_CARD_SEARCH);
 
-        // Remove old database files.
-        Context c = getContext();
-        File[] dbListing = null;
-        if(c != null)
-            dbListing = c.getDatabasePath(CoreDb.FILE_NAME)
-                         .getParentFile()
-                         .listFiles();
-
-        String name;
-        if(dbListing != null) {
-            for (File db : dbListing) {
-                name = db.getName();
-                if (!(CoreDb.FILE_NAME.equals(name) || DataDb.FILE_NAME.equals(name)))
-                    //noinspection ResultOfMethodCallIgnored
-                    db.delete();
-            }
+        // Remove old database files, away from the app's start up.
+        final Context c = getContext();
+        if(c != null) {
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    cleanDatabaseDir(c);
+                }
+            });
         }
-
-        // get the database files
-		core_db = new CoreDb(c);
-        data_db = new DataDb(c);
 		return true;
 	}
 
@@ -106,9 +192,14 @@ public class Provider extends ContentProvider {
             case ID_CARD_DATA:
             case ID_CARD_DATA_U:
             case ID_CARD_SET:
-            case ID_CARD_ALL: return MIME_CARD;
-            case ID_SUPPLY: return MIME_SUPPLY_TRANS;
-            case ID_HIST: return MIME_SUPPLY;
+            case ID_CARD_ALL:
+            case ID_CARD_ALL_ID:
+            case ID_CARD_SEARCH: return MIME_CARD;
+            case ID_SUPPLY:
+            case ID_SUPPLY_ID: return MIME_SUPPLY_TRANS;
+            case ID_HIST:
+            case ID_HIST_ID:
+            case ID_HIST_CARD: return MIME_SUPPLY;
             default: return null;
         }
 	}
@@ -117,76 +208,283 @@ public class Provider extends ContentProvider {
 	public Cursor query(@NonNull Uri uri, String[] projection,
 				String selection, String[] selectionArgs,
 				String sortOrder) {
-        SQLiteDatabase db;
+        long start = System.nanoTime();
+        int match = matcher.match(uri);
+
+        // Results from the core database may be replayed (unless they are random).
+        String key = null;
+        Cursor res = null;
+        if(isCore(match) && (sortOrder == null || !sortOrder.contains("random()"))) {
+            listenForLanguage();
+            key = QueryResultCache.key(uri, projection, selection, selectionArgs, sortOrder);
+            res = results.get(key);
+        }
+        if(res != null) {
+            stats.record("cached", uri, System.nanoTime() - start);
+        } else {
+            res = runQuery(match, uri, projection, selection, selectionArgs, sortOrder);
+            if(res == null) return null;
+            // SQLite cursors only prepare their statement here. The statement is
+            // run as the cursor window is filled, so fill it now to time the reads.
+            long run = System.nanoTime();
+            int rows = res.getCount();
+            long end = System.nanoTime();
+            stats.record("prepare", uri, run - start);
+            stats.record("run", uri, end - run);
+            // The sql and its arguments hold the user's search, so only debug builds log them
+            if(BuildConfig.DEBUG && QueryStats.SLOW_NANOS < end - start)
+                Log.w(TAG, "slow query " + uri + ": " + rows + " rows in "
+                           + (end - start) / 1000000L + "ms (" + (run - start) / 1000000L
+                           + "ms to prepare, " + (end - run) / 1000000L + "ms to run)\n"
+                           + queries.lastSql() + "\nargs: "
+                           + Arrays.toString(runArgs(match, uri, selectionArgs)));
+            if(key != null) res = results.put(key, res);
+        }
+
+        if(BuildConfig.DEBUG) {
+            Log.d(TAG, "query " + uri + ": " + res.getCount() + " rows in "
+                       + (System.nanoTime() - start) / 1000L + "us (query texts built: "
+                       + queries.built() + ", reused: " + queries.reused()
+                       + "; statements compiled: " + statements.compiled()
+                       + ", reused: " + statements.reused()
+                       + "; results cached: " + results.hits() + " hits, "
+                       + results.misses() + " misses)");
+        }
+        Context c = getContext();
+        if(c == null) return res;
+        res.setNotificationUri(c.getContentResolver(),
+                               match == ID_HIST || match == ID_HIST_CARD ? URI_HIST_ALL
+                                                                         : uri);
+        return res;
+	}
+
+
+    /** Run a query on the database.
+     *  @param match The id of the uri, from the {@link #matcher}.
+     *  @return The result of the query, or null if the uri is not recognized. */
+    private Cursor runQuery(int match, Uri uri, String[] projection, String selection,
+                            String[] selectionArgs, String sortOrder) {
+        String limit = uri.getQueryParameter(PARAM_LIMIT);
         Cursor res;
-        switch(matcher.match(uri)) {
+        switch(match) {
             case ID_CARD_DATA:
-                res = core_db.query(TableCard.TABLE_DATA, projection,
-                                    selection, selectionArgs, sortOrder, false);
+                res = queries.query(coreDb().getReadableDatabase(), false, TableCard.TABLE_DATA,
+                                    projection, selection, selectionArgs, sortOrder, limit);
                 break;
             case ID_CARD_DATA_U:
-                res = core_db.query(TableCard.TABLE_DATA, projection,
-                                    selection, selectionArgs, sortOrder, true);
+                res = queries.query(coreDb().getReadableDatabase(), true, TableCard.TABLE_DATA,
+                                    projection, selection, selectionArgs, sortOrder, limit);
                 break;
             case ID_CARD_SET:
-                res = core_db.query(TableCard.TABLE_SET, projection,
-                                    selection, selectionArgs, sortOrder, false);
+                res = queries.query(coreDb().getReadableDatabase(), false, TableCard.TABLE_SET,
+                                    projection, selection, selectionArgs, sortOrder, limit);
                 break;
             case ID_CARD_ALL:
-                res = core_db.query(TableCard.VIEW_ALL, projection,
-                                    selection, selectionArgs, sortOrder, false);
+                res = queries.query(coreDb().getReadableDatabase(), false, TableCard.VIEW_ALL,
+                                    projection, selection, selectionArgs, sortOrder, limit);
                 break;
             case ID_SUPPLY:
-                res = core_db.query(TableSupply.VIEW, projection,
-                                    selection, selectionArgs, sortOrder, false);
+                res = queries.query(coreDb().getReadableDatabase(), false, TableSupply.VIEW,
+                                    projection, selection, selectionArgs, sortOrder, limit);
                 break;
             case ID_HIST:
-                db = data_db.getReadableDatabase();
-                res = db.query(DataDb.TABLE_HISTORY, projection,
-                               selection, selectionArgs,
-                               null, null, sortOrder);
+                res = queries.query(dataDb().getReadableDatabase(), false, DataDb.TABLE_HISTORY,
+                                    projection, selection, selectionArgs, sortOrder, limit);
+                break;
+            case ID_CARD_SEARCH:
+                coreDb().buildSearch();
+                res = queries.query(coreDb().getReadableDatabase(), false, CardSearch.TABLE,
+                                    projection, selection,
+                                    CardSearch.args(uri.getQueryParameter(PARAM_SEARCH),
+                                                    selectionArgs),
+                                    CardSearch.sort(sortOrder), limit);
+                break;
+            case ID_CARD_ALL_ID:
+                res = queries.queryId(coreDb().getReadableDatabase(), TableCard.VIEW_ALL,
+                                      projection, ContentUris.parseId(uri),
+                                      selection, selectionArgs, sortOrder);
+                break;
+            case ID_SUPPLY_ID:
+                res = queries.queryId(coreDb().getReadableDatabase(), TableSupply.VIEW,
+                                      projection, ContentUris.parseId(uri),
+                                      selection, selectionArgs, sortOrder);
+                break;
+            case ID_HIST_CARD:
+                res = queries.query(dataDb().getReadableDatabase(), false, DataDb.TABLE_HISTORY,
+                                    projection, cardSelection(selection),
+                                    runArgs(match, uri, selectionArgs), sortOrder, limit);
+                break;
+            case ID_HIST_ID:
+                res = queries.queryId(dataDb().getReadableDatabase(), DataDb.TABLE_HISTORY,
+                                      projection, ContentUris.parseId(uri),
+                                      selection, selectionArgs, sortOrder);
                 break;
             default: return null;
         }
-        Context c = getContext();
-        if(c == null) return res;
-        res.setNotificationUri(c.getContentResolver(), uri);
         return res;
-	}
+    }
+
+
+    /** The arguments {@link #runQuery} binds to its sql. */
+    private static String[] runArgs(int match, Uri uri, String[] selectionArgs) {
+        if(match == ID_CARD_SEARCH)
+            return CardSearch.args(uri.getQueryParameter(PARAM_SEARCH), selectionArgs);
+        if(match == ID_HIST_CARD) {
+            String card = "" + ContentUris.parseId(uri);
+            if(selectionArgs == null) return new String[]{card};
+            return MaskFilter.join(new String[]{card}, selectionArgs);
+        }
+        return selectionArgs;
+    }
+
+
+    /** Limit a selection of the history table to the shuffles containing a card.
+     *  The id of the card is the first argument, from {@link #runArgs}. */
+    private static String cardSelection(String selection) {
+        if(selection == null || selection.length() == 0) return DataDb.SEL_HAS_CARD;
+        return DataDb.SEL_HAS_CARD + " AND (" + selection + ")";
+    }
+
+
+    /** Check if a uri id refers to the core database. */
+    private static boolean isCore(int match) {
+        switch(match) {
+            case ID_CARD_DATA: case ID_CARD_DATA_U: case ID_CARD_SET:
+            case ID_CARD_ALL:  case ID_SUPPLY:      case ID_CARD_SEARCH:
+            case ID_CARD_ALL_ID: case ID_SUPPLY_ID:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+
+    /** Start clearing the {@link #results} when the card language changes.
+     *  Done on the first core query. */
+    private void listenForLanguage() {
+        if(listening) return;
+        synchronized(this) {
+            if(listening) return;
+            Pref.addListener(languageListener);
+            listening = true;
+        }
+    }
 
 	
 	@Override
 	public Uri insert(@NonNull Uri uri, ContentValues values) {
+        long start = System.nanoTime();
+        Uri res = insertRow(uri, values);
+        timed("insert", uri, start);
+        return res;
+	}
+
+
+    /** Perform an {@link #insert} without timing it. */
+    private Uri insertRow(Uri uri, ContentValues values) {
         switch(matcher.match(uri)) {
             case ID_HIST:
+                // Write the shuffle and its cards together
+                SQLiteDatabase db = dataDb().getWritableDatabase();
                 long row;
+                db.beginTransaction();
                 try {
-                    row = data_db.getReadableDatabase()
-                                 .insertOrThrow(DataDb.TABLE_HISTORY, null, values);
+                    row = db.insertOrThrow(DataDb.TABLE_HISTORY, null, values);
+                    DataDb.writeCards(db, statements, DataDb._H_TIME + "=?",
+                                      new String[]{"" + row});
+                    db.setTransactionSuccessful();
                 } catch (Exception e) {
+                    row = -1L;
+                } finally {
+                    db.endTransaction();
+                }
+                // The shuffle already exists, overwrite it instead.
+                if(row == -1L) {
                     row = values.getAsLong(DataDb._H_TIME);
-                    int change = update(uri, values,
-                                        DataDb._H_TIME + "=?",
-                                        new String[]{"" + row});
-                    if(change < 1) row = -1L;
+                    Uri existing = ContentUris.withAppendedId(URI_HIST, row);
+                    return update(existing, values, null, null) < 1 ? null : existing;
                 }
-                if(row == -1L) return null;
-                notifyChange(URI_HIST);
-                return Uri.withAppendedPath(URI_HIST, "" + row);
+                Uri inserted = ContentUris.withAppendedId(URI_HIST, row);
+                notifyChange(inserted);
+                return inserted;
             default: return null;
         }
 	}
 
 
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        long start = System.nanoTime();
+        int res = bulkInsertRows(uri, values);
+        timed("bulkInsert", uri, start);
+        return res;
+    }
+
+
+    /** Perform a {@link #bulkInsert} without timing it.
+     *  Shuffles are inserted in one transaction, and shuffles that are already in
+     *  the history are left as they are. */
+    private int bulkInsertRows(Uri uri, ContentValues[] values) {
+        if(matcher.match(uri) != ID_HIST) return super.bulkInsert(uri, values);
+        SQLiteDatabase db = dataDb().getWritableDatabase();
+        String[] row = new String[1];
+        int count = 0;
+        db.beginTransaction();
+        try {
+            for(ContentValues shuffle : values) {
+                long time = db.insertWithOnConflict(DataDb.TABLE_HISTORY, null, shuffle,
+                                                    SQLiteDatabase.CONFLICT_IGNORE);
+                if(time == -1L) continue;
+                row[0] = "" + time;
+                DataDb.writeCards(db, statements, DataDb._H_TIME + "=?", row);
+                count++;
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if(0 < count) notifyChange(URI_HIST);
+        if(BuildConfig.DEBUG)
+            Log.d(TAG, count + " shuffles inserted (statements compiled: "
+                       + statements.compiled() + ", reused: " + statements.reused() + ")");
+        return count;
+    }
+
+
 	@Override
 	public int update(@NonNull Uri uri, ContentValues values,
                       String selection, String[] selectionArgs) {
-        switch(matcher.match(uri)) {
+        long start = System.nanoTime();
+        int res = updateRows(uri, values, selection, selectionArgs);
+        timed("update", uri, start);
+        return res;
+	}
+
+
+    /** Perform an {@link #update} without timing it. */
+    private int updateRows(Uri uri, ContentValues values,
+                           String selection, String[] selectionArgs) {
+        int match = matcher.match(uri);
+        switch(match) {
+            case ID_HIST_ID:
+                selection = rowSelection(uri, selection);
+                // fall through
             case ID_HIST:
-                int change = data_db.getReadableDatabase()
-                                    .update(DataDb.TABLE_HISTORY, values,
-                                            selection, selectionArgs);
-                if(0 < change) notifyChange(URI_HIST);
+                // Rewrite the shuffle's cards if they have changed
+                SQLiteDatabase db = dataDb().getWritableDatabase();
+                int change;
+                db.beginTransaction();
+                try {
+                    change = db.update(DataDb.TABLE_HISTORY, values,
+                                       selection, selectionArgs);
+                    if(0 < change && (values.containsKey(DataDb._H_CARDS)
+                                      || values.containsKey(DataDb._H_BANE)))
+                        DataDb.writeCards(db, statements, selection, selectionArgs);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                if(0 < change) notifyChange(match == ID_HIST_ID ? uri : URI_HIST);
                 return change;
             default: return 0;
         }
@@ -194,17 +492,129 @@ public class Provider extends ContentProvider {
 	
 	@Override
 	public int delete(@NonNull Uri uri, String selection, String[] selectionArgs) {
-        switch (matcher.match(uri)) {
+        long start = System.nanoTime();
+        int res = deleteRows(uri, selection, selectionArgs);
+        timed("delete", uri, start);
+        return res;
+    }
+
+
+    /** Perform a {@link #delete} without timing it. */
+    private int deleteRows(Uri uri, String selection, String[] selectionArgs) {
+        int match = matcher.match(uri);
+        switch (match) {
+            case ID_HIST_ID:
+                selection = rowSelection(uri, selection);
+                // fall through
             case ID_HIST:
-                int change = data_db.getReadableDatabase()
+                int change = dataDb().getReadableDatabase()
                                     .delete(DataDb.TABLE_HISTORY,
                                             selection, selectionArgs);
-                if(change != 0) notifyChange(URI_HIST);
+                if(change != 0) notifyChange(match == ID_HIST_ID ? uri : URI_HIST);
                 return change;
             default: return 0;
         }
     }
 
+
+    /** Record the time taken by a change to the data, and log it if it is slow.
+     *  @param op The operation performed.
+     *  @param uri The uri it was performed on.
+     *  @param start When the operation started, from {@link System#nanoTime()}. */
+    private void timed(String op, Uri uri, long start) {
+        long time = System.nanoTime() - start;
+        stats.record(op, uri, time);
+        if(QueryStats.SLOW_NANOS < time)
+            Log.w(TAG, "slow " + op + " " + uri + ": " + time / 1000000L + "ms");
+    }
+
+
+    /** Limit a selection to the row whose id ends the uri.
+     *  @param uri A uri ending in a row id.
+     *  @param selection The selection passed with the uri. May be null.
+     *  @return A selection matching that row only. */
+    private static String rowSelection(Uri uri, String selection) {
+        String row = DataDb._H_TIME + "=" + ContentUris.parseId(uri);
+        if(selection == null || selection.length() == 0) return row;
+        return row + " AND (" + selection + ")";
+    }
+
+    @Override
+    public Bundle call(@NonNull String method, String arg, Bundle extras) {
+        switch(method) {
+            case METHOD_BUILD_SEARCH:
+                coreDb().buildSearch();
+                return null;
+            case METHOD_CACHE_STATS:
+                Bundle stats = new Bundle();
+                stats.putInt(EXTRA_HITS, results.hits());
+                stats.putInt(EXTRA_MISSES, results.misses());
+                stats.putInt(EXTRA_BYTES, results.bytes());
+                return stats;
+            case METHOD_QUERY_STATS:
+                Bundle json = new Bundle();
+                json.putString(EXTRA_JSON, stats.toJson());
+                return json;
+            case METHOD_PRUNE_HISTORY:
+                if(extras == null) extras = Bundle.EMPTY;
+                long start = System.nanoTime();
+                SQLiteDatabase db = dataDb().getWritableDatabase();
+                long pagesBefore = DataDb.getPragma(db, statements, "page_count");
+                int deleted = DataDb.pruneHistory(db, statements, extras.getInt(EXTRA_MAX_ROWS),
+                                                  extras.getLong(EXTRA_MIN_TIME));
+                DataDb.vacuum(db, statements);
+                Log.i(TAG, "history pruned: " + deleted + " shuffles removed, "
+                           + pagesBefore + " -> "
+                           + DataDb.getPragma(db, statements, "page_count")
+                           + " pages in " + (System.nanoTime() - start) / 1000000L + "ms");
+                if(0 < deleted) notifyChange(URI_HIST);
+
+                Bundle res = new Bundle();
+                res.putInt(EXTRA_DELETED, deleted);
+                return res;
+            default:
+                return super.call(method, arg, extras);
+        }
+    }
+
+    /** Get the handle to the core database, creating it if needed. */
+    private synchronized CoreDb coreDb() {
+        if(core_db == null) core_db = new CoreDb(getContext());
+        return core_db;
+    }
+
+
+    /** Get the handle to the data database, creating it if needed. */
+    private synchronized DataDb dataDb() {
+        if(data_db == null) data_db = new DataDb(getContext());
+        return data_db;
+    }
+
+
+    /** Remove old database files. Only the files of the current databases
+     *  (including their journals and the core database's install file) are kept.
+     *  @param c The context of the app. */
+    private static void cleanDatabaseDir(Context c) {
+        long start = System.nanoTime();
+        File[] dbListing = c.getDatabasePath(CoreDb.FILE_NAME)
+                            .getParentFile()
+                            .listFiles();
+        if(dbListing == null) return;
+
+        String name;
+        int removed = 0;
+        for(File db : dbListing) {
+            name = db.getName();
+            if(!(name.startsWith(CoreDb.FILE_NAME) || name.startsWith(DataDb.FILE_NAME))
+                    && db.delete())
+                removed++;
+        }
+        if(BuildConfig.DEBUG)
+            Log.d(TAG, "database directory cleaned: " + removed + " files removed in "
+                       + (System.nanoTime() - start) / 1000L + "us");
+    }
+
+
     /** Notify all listening processes that the data at the uri has changed */
     private void notifyChange(Uri uri) {
         Context c = getContext();
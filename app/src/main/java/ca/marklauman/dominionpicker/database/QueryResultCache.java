@@ -0,0 +1,242 @@
+package ca.marklauman.dominionpicker.database;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.LruCache;
+
+import java.util.Arrays;
+
+/** Keeps the results of recent queries to the core database in memory.
+ *  The core database never changes while the app runs, so a query that was
+ *  made before can be answered by replaying its result.
+ *  The cache is bounded by the approximate size of the results (in bytes).
+ *  @author Mark Lauman */
+class QueryResultCache {
+    /** Maximum size of all cached results (in bytes). */
+    private static final int MAX_BYTES = 1024 * 1024;
+    /** Results larger than this (in bytes) are not cached. */
+    private static final int MAX_RESULT_BYTES = MAX_BYTES / 4;
+    /** Approximate size of each cell of a result, not counting its value. */
+    private static final int CELL_BYTES = 16;
+
+    /** Maps each query to its result. */
+    private final LruCache<String, Result> results = new LruCache<String, Result>(MAX_BYTES) {
+        @Override
+        protected int sizeOf(String key, Result value) {
+            return value.bytes + 2 * key.length();
+        }
+    };
+
+
+    /** Build the key of a query. */
+    static String key(Uri uri, String[] projection, String selection,
+                      String[] selectionArgs, String sortOrder) {
+        return uri + "\u0000" + Arrays.toString(projection) + '\u0000' + selection
+               + '\u0000' + Arrays.toString(selectionArgs) + '\u0000' + sortOrder;
+    }
+
+
+    /** Get a cursor replaying a cached result.
+     *  @param key The key of the query.
+     *  @return A new cursor over the result, or null if it is not cached. */
+    Cursor get(String key) {
+        Result result = results.get(key);
+        if(result == null) return null;
+        return new ReplayCursor(result);
+    }
+
+
+    /** Read a query's result into the cache. The cursor is read in full and closed.
+     *  @param key The key of the query.
+     *  @param c The cursor returned by the query.
+     *  @return A new cursor over the result. */
+    Cursor put(String key, Cursor c) {
+        Result result;
+        try {
+            result = new Result(c);
+        } finally {
+            c.close();
+        }
+        if(result.bytes <= MAX_RESULT_BYTES)
+            results.put(key, result);
+        return new ReplayCursor(result);
+    }
+
+
+    /** Remove every result from the cache. */
+    void clear() {
+        results.evictAll();
+    }
+
+
+    /** Number of queries answered from the cache. */
+    int hits() {
+        return results.hitCount();
+    }
+
+
+    /** Number of queries that were not in the cache. */
+    int misses() {
+        return results.missCount();
+    }
+
+
+    /** Approximate size of the cached results (in bytes). */
+    int bytes() {
+        return results.size();
+    }
+
+
+    /** The result of a query, copied out of its cursor. Never modified once built. */
+    private static class Result {
+        /** Names of the columns. */
+        final String[] columns;
+        /** Values of the cells, one row after the other.
+         *  Each value is a Long, Double, String, byte[] or null. */
+        final Object[] values;
+        /** Number of rows. */
+        final int rows;
+        /** Approximate size of this result (in bytes). */
+        final int bytes;
+
+        Result(Cursor c) {
+            columns = c.getColumnNames();
+            rows = c.getCount();
+            values = new Object[rows * columns.length];
+            int size = CELL_BYTES * values.length;
+            int cell = 0;
+            c.moveToPosition(-1);
+            while(c.moveToNext()) {
+                for(int col = 0; col < columns.length; col++) {
+                    switch(c.getType(col)) {
+                        case Cursor.FIELD_TYPE_INTEGER:
+                            values[cell] = c.getLong(col);
+                            size += 8;
+                            break;
+                        case Cursor.FIELD_TYPE_FLOAT:
+                            values[cell] = c.getDouble(col);
+                            size += 8;
+                            break;
+                        case Cursor.FIELD_TYPE_STRING:
+                            String str = c.getString(col);
+                            values[cell] = str;
+                            size += 40 + 2 * str.length();
+                            break;
+                        case Cursor.FIELD_TYPE_BLOB:
+                            byte[] blob = c.getBlob(col);
+                            values[cell] = blob;
+                            size += 16 + blob.length;
+                            break;
+                    }
+                    cell++;
+                }
+            }
+            bytes = size;
+        }
+    }
+
+
+    /** Cursor over a cached result. Many cursors may share the same result. */
+    private static class ReplayCursor extends AbstractCursor {
+        /** The result replayed. */
+        private final Result mResult;
+
+        ReplayCursor(Result result) {
+            mResult = result;
+        }
+
+        /** Get the value of a column in the current row. */
+        private Object value(int column) {
+            if(column < 0 || mResult.columns.length <= column)
+                throw new IndexOutOfBoundsException("column " + column);
+            if(mPos < 0 || mResult.rows <= mPos)
+                throw new IndexOutOfBoundsException("row " + mPos);
+            return mResult.values[mPos * mResult.columns.length + column];
+        }
+
+        @Override
+        public int getCount() {
+            return mResult.rows;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return mResult.columns;
+        }
+
+        @Override
+        public int getType(int column) {
+            Object val = value(column);
+            if(val == null)           return FIELD_TYPE_NULL;
+            if(val instanceof Long)   return FIELD_TYPE_INTEGER;
+            if(val instanceof Double) return FIELD_TYPE_FLOAT;
+            if(val instanceof byte[]) return FIELD_TYPE_BLOB;
+            return FIELD_TYPE_STRING;
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return value(column) == null;
+        }
+
+        @Override
+        public String getString(int column) {
+            Object val = value(column);
+            if(val == null) return null;
+            if(val instanceof byte[]) return new String((byte[]) val);
+            return val.toString();
+        }
+
+        @Override
+        public byte[] getBlob(int column) {
+            Object val = value(column);
+            if(val == null || val instanceof byte[]) return (byte[]) val;
+            return val.toString().getBytes();
+        }
+
+        @Override
+        public long getLong(int column) {
+            Object val = value(column);
+            if(val instanceof Number) return ((Number) val).longValue();
+            if(val instanceof String) {
+                try {
+                    return Long.parseLong(((String) val).trim());
+                } catch(NumberFormatException ignored) {}
+            }
+            return (long) parse(val);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            Object val = value(column);
+            if(val instanceof Number) return ((Number) val).doubleValue();
+            return parse(val);
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) getLong(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return (float) getDouble(column);
+        }
+
+        /** Read a number out of a text value, the way SQLite does (0 if it is not a number). */
+        private static double parse(Object val) {
+            if(!(val instanceof String)) return 0;
+            try {
+                return Double.parseDouble(((String) val).trim());
+            } catch(NumberFormatException e) {
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package ca.marklauman.dominionpicker.database;
+
+import android.net.Uri;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Keeps a latency histogram for each kind of operation on each {@link Provider} uri.
+ *  Each histogram has four buckets for every power of two microseconds, so any time
+ *  recorded is within 25% of its bucket's value however large it is.
+ *  The histograms can be exported as json with {@link #toJson()}.
+ *  @author Mark Lauman */
+class QueryStats {
+    /** Operations taking longer than this (in nanoseconds) are slow. */
+    static final long SLOW_NANOS = 50L * 1000000L;
+
+    /** The histograms, by operation and uri. */
+    private final TreeMap<String, Histogram> histograms = new TreeMap<>();
+
+
+    /** Name of the table or view a uri refers to, without the row id or parameters. */
+    static String name(Uri uri) {
+        List<String> path = uri.getPathSegments();
+        return path.size() == 0 ? "" : path.get(0);
+    }
+
+
+    /** Record the time taken by an operation.
+     *  @param op The operation, such as "query".
+     *  @param uri The uri the operation was performed on.
+     *  @param nanos The time it took in nanoseconds. */
+    void record(String op, Uri uri, long nanos) {
+        String key = op + " " + name(uri);
+        synchronized(histograms) {
+            Histogram hist = histograms.get(key);
+            if(hist == null) {
+                hist = new Histogram();
+                histograms.put(key, hist);
+            }
+            hist.record(nanos / 1000L);
+        }
+    }
+
+
+    /** Export every histogram as json.
+     *  @return A json object with one entry per operation and uri. */
+    String toJson() {
+        JSONObject res = new JSONObject();
+        try {
+            synchronized(histograms) {
+                for(Map.Entry<String, Histogram> entry : histograms.entrySet())
+                    res.put(entry.getKey(), entry.getValue().toJson());
+            }
+            return res.toString(2);
+        } catch(JSONException e) {
+            // Only thrown for invalid numbers, which are never recorded.
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    /** Counts the times recorded for one operation, in logarithmic buckets. */
+    static class Histogram {
+        /** Number of buckets for each power of two. */
+        private static final int SUB_BUCKETS = 4;
+        /** Number of buckets. The last one holds everything over 2^36us (about 19 hours). */
+        private static final int BUCKETS = 36 * SUB_BUCKETS;
+
+        /** Number of times in each bucket. */
+        private final long[] counts = new long[BUCKETS];
+        /** Number of times recorded. */
+        private long count = 0L;
+        /** Total of the times recorded, in microseconds. */
+        private long total = 0L;
+        /** Longest time recorded, in microseconds. */
+        private long max = 0L;
+
+
+        /** Record one time, in microseconds. */
+        void record(long micros) {
+            if(micros < 0L) micros = 0L;
+            counts[bucket(micros)]++;
+            count++;
+            total += micros;
+            if(max < micros) max = micros;
+        }
+
+
+        /** Find the bucket holding a time. */
+        static int bucket(long micros) {
+            if(micros < SUB_BUCKETS) return (int) micros;
+            int exp = 63 - Long.numberOfLeadingZeros(micros);
+            int sub = (int) (micros >> (exp - 2)) - SUB_BUCKETS;
+            return Math.min(BUCKETS - 1, SUB_BUCKETS * (exp - 1) + sub);
+        }
+
+
+        /** The smallest time held by a bucket. */
+        static long lowest(int bucket) {
+            if(bucket < SUB_BUCKETS) return bucket;
+            int exp = bucket / SUB_BUCKETS + 1;
+            long sub = bucket % SUB_BUCKETS;
+            return (SUB_BUCKETS + sub) << (exp - 2);
+        }
+
+
+        /** Estimate a percentile of the times recorded.
+         *  @param percent The percentile, from 0 to 100.
+         *  @return The lowest time of the bucket holding that percentile. */
+        long percentile(double percent) {
+            long target = (long) Math.ceil(count * percent / 100.0);
+            long seen = 0L;
+            for(int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if(0L < counts[i] && target <= seen) return lowest(i);
+            }
+            return max;
+        }
+
+
+        /** Export this histogram as json. Only the buckets in use are included. */
+        JSONObject toJson() throws JSONException {
+            JSONObject res = new JSONObject();
+            res.put("count", count);
+            res.put("total_us", total);
+            res.put("max_us", max);
+            res.put("p50_us", percentile(50));
+            res.put("p90_us", percentile(90));
+            res.put("p99_us", percentile(99));
+            JSONObject buckets = new JSONObject();
+            for(int i = 0; i < BUCKETS; i++)
+                if(counts[i] != 0L) buckets.put("" + lowest(i), counts[i]);
+            res.put("buckets_us", buckets);
+            return res;
+        }
+    }
+}
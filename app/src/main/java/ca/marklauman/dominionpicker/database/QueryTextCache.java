@@ -0,0 +1,100 @@
+package ca.marklauman.dominionpicker.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.util.LruCache;
+
+import java.util.Arrays;
+
+/** Holds the sql text of the queries made through the {@link Provider}.
+ *  Each query shape is only built once, and as long as its arguments are bound
+ *  the same text is sent to SQLite every time. That gives each connection's own
+ *  statement cache the chance to reuse a statement it compiled earlier, but whether
+ *  it does cannot be seen from here: the counts kept by this class are only of the
+ *  texts it built and reused.
+ *  @author Mark Lauman */
+class QueryTextCache {
+    /** Maximum number of query shapes kept in the cache. */
+    private static final int MAX_SHAPES = 20;
+
+    /** Maps each query shape to its sql text. */
+    private final LruCache<String, String> texts = new LruCache<>(MAX_SHAPES);
+    /** The sql text of the last query made on each thread. */
+    private final ThreadLocal<String> lastSql = new ThreadLocal<>();
+
+
+    /** Perform a query.
+     *  @param db The database containing the table.
+     *  @param distinct True if each row should be unique.
+     *  @param table The table or view to query.
+     *  @param projection The columns to return (null for all columns).
+     *  @param selection Filter applied to the rows (may be null).
+     *  @param selectionArgs Arguments for the filter.
+     *  @param sortOrder The order of the returned rows (may be null).
+     *  @param limit Maximum number of rows returned (null for no limit).
+     *  @return A cursor over the matching rows. */
+    Cursor query(SQLiteDatabase db, boolean distinct, String table, String[] projection,
+                 String selection, String[] selectionArgs, String sortOrder, String limit) {
+        String sql = getSql(distinct, table, projection, selection, sortOrder, limit);
+        lastSql.set(sql);
+        return db.rawQuery(sql, selectionArgs);
+    }
+
+
+    /** Look up the row with the given id.
+     *  @param db The database containing the table.
+     *  @param table The table or view to query.
+     *  @param projection The columns to return (null for all columns).
+     *  @param id The {@code _id} of the row.
+     *  @param selection Additional filter applied to the row (may be null).
+     *  @param selectionArgs Arguments for the additional filter.
+     *  @param sortOrder The order of the returned rows (may be null).
+     *  @return A cursor over the matching rows. */
+    Cursor queryId(SQLiteDatabase db, String table, String[] projection, long id,
+                   String selection, String[] selectionArgs, String sortOrder) {
+        String where = TableCard._ID + "=?";
+        if(selection != null && selection.length() != 0)
+            where += " AND (" + selection + ")";
+        String[] args = new String[selectionArgs == null ? 1 : selectionArgs.length + 1];
+        args[0] = Long.toString(id);
+        if(selectionArgs != null)
+            System.arraycopy(selectionArgs, 0, args, 1, selectionArgs.length);
+        String sql = getSql(false, table, projection, where, sortOrder, null);
+        lastSql.set(sql);
+        return db.rawQuery(sql, args);
+    }
+
+
+    /** The sql text of the last query made on the calling thread. */
+    String lastSql() {
+        return lastSql.get();
+    }
+
+
+    /** Number of query texts that had to be built. */
+    int built() {
+        return texts.missCount();
+    }
+
+
+    /** Number of queries that reused a text built earlier. */
+    int reused() {
+        return texts.hitCount();
+    }
+
+
+    /** Retrieve the sql text for a query shape, building it if it is not in the cache. */
+    private String getSql(boolean distinct, String table, String[] projection,
+                          String selection, String sortOrder, String limit) {
+        String key = distinct + "\u0000" + table + '\u0000' + Arrays.toString(projection)
+                     + '\u0000' + selection + '\u0000' + sortOrder + '\u0000' + limit;
+        String sql = texts.get(key);
+        if(sql != null) return sql;
+
+        sql = SQLiteQueryBuilder.buildQueryString(distinct, table, projection, selection,
+                                                  null, null, sortOrder, limit);
+        texts.put(key, sql);
+        return sql;
+    }
+}
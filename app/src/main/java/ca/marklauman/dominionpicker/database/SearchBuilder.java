@@ -0,0 +1,31 @@
+package ca.marklauman.dominionpicker.database;
+
+import android.content.Context;
+import android.os.AsyncTask;
+
+/** This task builds the card search table in the background, so the first search
+ *  does not have to wait for it. It is run once each time the app starts, and only
+ *  does work on first run and after the core database is upgraded.
+ *  @author Mark Lauman */
+public class SearchBuilder extends AsyncTask<Void, Void, Void> {
+    /** Context used to reach the {@link Provider}. */
+    private final Context mContext;
+
+    /** Create a new search builder.
+     *  @param context Any context in the app. Only the application context is kept. */
+    public SearchBuilder(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /** Start the builder without holding up other background tasks. */
+    public void start() {
+        executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    @Override
+    protected Void doInBackground(Void... ignored) {
+        mContext.getContentResolver()
+                .call(Provider.URI_CARD_SEARCH, Provider.METHOD_BUILD_SEARCH, null, null);
+        return null;
+    }
+}
@@ -0,0 +1,125 @@
+package ca.marklauman.dominionpicker.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Holds the statements compiled for the writes and single value reads of a database.
+ *  Each statement is compiled with {@link SQLiteDatabase#compileStatement} the first time
+ *  it is used on a thread, then rebound and run again each time after that.
+ *  So a batch of writes, such as an import, compiles each statement once instead of
+ *  once for every row.
+ *  <p>A statement keeps its bindings between runs, so each thread keeps its own
+ *  statements. No lock is shared between threads, which could deadlock
+ *  with the database's own transaction lock.</p>
+ *  @author Mark Lauman */
+class StatementCache {
+    /** The statements of each thread, by sql text. */
+    private final ThreadLocal<Statements> statements = new ThreadLocal<Statements>() {
+        @Override
+        protected Statements initialValue() {
+            return new Statements();
+        }
+    };
+    /** Number of statements compiled. */
+    private final AtomicInteger compiled = new AtomicInteger();
+    /** Number of times a statement compiled earlier was run again. */
+    private final AtomicInteger reused = new AtomicInteger();
+
+
+    /** Run a query that returns a single number, such as a count or a pragma.
+     *  @param db The database to query.
+     *  @param sql The query. Its arguments are bound as numbers.
+     *  @param args The arguments of the query.
+     *  @param fallback The result if the query returns no rows.
+     *  @return The first column of the first row. */
+    long queryForLong(SQLiteDatabase db, String sql, long fallback, long... args) {
+        try {
+            return get(db, sql, args).simpleQueryForLong();
+        } catch(SQLiteDoneException e) {
+            return fallback;
+        }
+    }
+
+
+    /** Run an insert.
+     *  @param db The database to write to.
+     *  @param sql The insert statement. Its arguments are bound as numbers.
+     *  @param args The arguments of the insert.
+     *  @return The row id of the new row, or -1 if no row was inserted. */
+    long executeInsert(SQLiteDatabase db, String sql, long... args) {
+        return get(db, sql, args).executeInsert();
+    }
+
+
+    /** Run an update or delete.
+     *  @param db The database to write to.
+     *  @param sql The statement. Its arguments are bound as numbers.
+     *  @param args The arguments of the statement.
+     *  @return The number of rows changed. */
+    int executeUpdateDelete(SQLiteDatabase db, String sql, long... args) {
+        return get(db, sql, args).executeUpdateDelete();
+    }
+
+
+    /** Close the statements of the calling thread. */
+    void close() {
+        statements.get().close();
+    }
+
+
+    /** Number of statements that had to be compiled. */
+    int compiled() {
+        return compiled.get();
+    }
+
+
+    /** Number of times a statement compiled earlier was run again. */
+    int reused() {
+        return reused.get();
+    }
+
+
+    /** Get the calling thread's statement for some sql, compiling it if needed,
+     *  and bind its arguments. */
+    private SQLiteStatement get(SQLiteDatabase db, String sql, long[] args) {
+        Statements mine = statements.get();
+        // Statements belong to the database that compiled them
+        if(mine.database != db) {
+            mine.close();
+            mine.database = db;
+        }
+        SQLiteStatement statement = mine.bySql.get(sql);
+        if(statement == null) {
+            statement = db.compileStatement(sql);
+            mine.bySql.put(sql, statement);
+            compiled.incrementAndGet();
+        } else {
+            statement.clearBindings();
+            reused.incrementAndGet();
+        }
+        for(int i = 0; i < args.length; i++)
+            statement.bindLong(i + 1, args[i]);
+        return statement;
+    }
+
+
+    /** The statements of one thread, by sql text. */
+    private static class Statements {
+        /** The statements, by sql text. */
+        final HashMap<String, SQLiteStatement> bySql = new HashMap<>();
+        /** The database the statements were compiled on. */
+        SQLiteDatabase database = null;
+
+        /** Close every statement. */
+        void close() {
+            for(SQLiteStatement statement : bySql.values())
+                statement.close();
+            bySql.clear();
+            database = null;
+        }
+    }
+}
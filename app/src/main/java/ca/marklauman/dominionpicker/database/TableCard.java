@@ -20,6 +20,11 @@ public abstract class TableCard {
     static final String TABLE_SET = "cardSet";
     /** View that spans all 3 card tables. */
     static final String VIEW_ALL = "cardAll";
+    /** Table containing the translated name and text of each card. */
+    static final String TABLE_TRANS = "cardTrans";
+    /** Full text search table built from the {@link #TABLE_TRANS} table.
+     *  The docid of each row is the rowid of its translation. */
+    static final String TABLE_SEARCH = "cardSearch";
 
     /** Unique identifier for an expansion. From the cardSet and cardData tables. */
     public static final String _SET_ID = "set_id";
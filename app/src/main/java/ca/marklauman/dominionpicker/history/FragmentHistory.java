@@ -1,6 +1,10 @@
 package ca.marklauman.dominionpicker.history;
 
+import android.annotation.TargetApi;
+import android.app.Activity;
 import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.v4.app.Fragment;
@@ -8,8 +12,12 @@ import android.support.v4.app.FragmentManager;
 import android.support.v4.app.FragmentStatePagerAdapter;
 import android.support.v4.view.ViewPager;
 import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.Toast;
 
 import ca.marklauman.dominionpicker.R;
 import ca.marklauman.tools.SlidingTabLayout;
@@ -19,6 +27,12 @@ import ca.marklauman.tools.SlidingTabLayout;
 public class FragmentHistory extends Fragment {
     /** Key used to save the active tab to savedInstanceState */
     private static final String ACTIVE_KEY = "activeTab";
+    /** Request code used to pick the document the history is exported to. */
+    private static final int REQUEST_EXPORT = 1;
+    /** Request code used to pick the document the history is imported from. */
+    private static final int REQUEST_IMPORT = 2;
+    /** Mime type of the history documents. */
+    private static final String MIME_JSON = "application/json";
     /** The currently active tab */
     private int activeTab = 1;
 
@@ -27,6 +41,8 @@ public class FragmentHistory extends Fragment {
         super.onCreate(savedInstanceState);
         if(savedInstanceState != null)
             activeTab = savedInstanceState.getInt(ACTIVE_KEY);
+        // Documents can only be picked on KitKat and up.
+        setHasOptionsMenu(Build.VERSION_CODES.KITKAT <= Build.VERSION.SDK_INT);
     }
 
     @Override
@@ -51,6 +67,64 @@ public class FragmentHistory extends Fragment {
         return view;
     }
 
+    @Override
+    public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
+        inflater.inflate(R.menu.history, menu);
+    }
+
+
+    @Override
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    public boolean onOptionsItemSelected(MenuItem item) {
+        int id = item.getItemId();
+        // Only one copy of the history is made at a time
+        if((id == R.id.action_hist_export || id == R.id.action_hist_import)
+           && HistoryTransfer.isRunning()) {
+            Toast.makeText(getContext(), R.string.hist_transfer_busy, Toast.LENGTH_SHORT)
+                 .show();
+            return true;
+        }
+        switch(id) {
+            case R.id.action_hist_export:
+                Intent export = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+                export.addCategory(Intent.CATEGORY_OPENABLE);
+                export.setType(MIME_JSON);
+                export.putExtra(Intent.EXTRA_TITLE, "dominion_history.json");
+                startActivityForResult(export, REQUEST_EXPORT);
+                return true;
+            case R.id.action_hist_import:
+                Intent open = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+                open.addCategory(Intent.CATEGORY_OPENABLE);
+                open.setType(MIME_JSON);
+                startActivityForResult(open, REQUEST_IMPORT);
+                return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+
+    @Override
+    public void onActivityResult(int requestCode, int resultCode, Intent data) {
+        if(resultCode != Activity.RESULT_OK || data == null || data.getData() == null
+                || getContext() == null) {
+            super.onActivityResult(requestCode, resultCode, data);
+            return;
+        }
+        switch(requestCode) {
+            case REQUEST_EXPORT:
+                if(!HistoryTransfer.isRunning())
+                    new HistoryTransfer(getContext(), data.getData(), true).start();
+                break;
+            case REQUEST_IMPORT:
+                if(!HistoryTransfer.isRunning())
+                    new HistoryTransfer(getContext(), data.getData(), false).start();
+                break;
+            default:
+                super.onActivityResult(requestCode, resultCode, data);
+        }
+    }
+
+
     /** Adapter used to switch panels */
     private class PagerAdapter extends FragmentStatePagerAdapter {
         /** The tab names */
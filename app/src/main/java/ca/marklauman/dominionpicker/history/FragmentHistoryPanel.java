@@ -2,7 +2,6 @@ package ca.marklauman.dominionpicker.history;
 
 import android.app.Activity;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
@@ -16,6 +15,8 @@ import android.view.ViewGroup;
 import android.widget.AdapterView;
 import android.widget.ListView;
 
+import java.util.Set;
+
 import ca.marklauman.dominionpicker.ActivitySupply;
 import ca.marklauman.dominionpicker.R;
 import ca.marklauman.dominionpicker.database.LoaderId;
@@ -99,6 +100,8 @@ public class FragmentHistoryPanel extends Fragment
         // View configuration
         listView.setAdapter(handler);
         listView.setOnItemClickListener(this);
+        if(handler instanceof HandlerHistory)
+            listView.setOnScrollListener((HandlerHistory) handler);
         updateEmpty();
         return view;
     }
@@ -155,8 +158,8 @@ public class FragmentHistoryPanel extends Fragment
 
 
     @Override
-    public void onSharedPreferenceChanged(SharedPreferences pref, String key) {
-        if(!Pref.COMP_LANG.equals(key)) return;
+    public void onPreferencesChanged(Set<String> keys) {
+        if(!keys.contains(Pref.COMP_LANG)) return;
         FragmentActivity activity = getActivity();
         if(activity == null) return;
         activity.getSupportLoaderManager()
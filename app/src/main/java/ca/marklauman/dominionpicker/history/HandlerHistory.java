@@ -5,34 +5,40 @@ import android.database.Cursor;
 import android.graphics.Typeface;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.view.View;
+import android.widget.AbsListView;
 import android.widget.TextView;
 
 import ca.marklauman.dominionpicker.R;
 import ca.marklauman.dominionpicker.database.DataDb;
-import ca.marklauman.dominionpicker.database.Provider;
 import ca.marklauman.dominionpicker.database.TimestampFormatter;
 import ca.marklauman.tools.CursorHandler;
 import ca.marklauman.tools.CursorSelAdapter;
-import ca.marklauman.tools.Utils;
 
 /** Handler for loading and displaying shuffles from the {@link DataDb}.
+ *  Shuffles are loaded one page at a time by a {@link HistoryLoader}.
+ *  The next page is loaded as the list it is attached to nears the end.
+ *  Row ids are shuffle times, so they stay the same when a single page is reloaded.
  *  @author Mark Lauman */
 class HandlerHistory extends CursorSelAdapter
-                            implements CursorHandler {
+                            implements CursorHandler, AbsListView.OnScrollListener {
+    /** Start loading the next page when this many rows are left to scroll to. */
+    private static final int PREFETCH = HistoryLoader.PAGE_SIZE / 2;
+
     /** Used to format the supply times */
     private final TimestampFormatter tFormat;
     /** True if only favorites are to be displayed */
     private final boolean onlyFav;
+    /** The loader of the shuffles. */
+    private HistoryLoader mLoader;
 
     /** Column index for time. */
     private int _time;
     /** Column index for name. */
     private int _name;
-    /** Column index for cards. */
-    private int _cards;
+    /** Column index for the number of cards. */
+    private int _card_count;
     /** Column index for shelters. */
     private int _shelters;
     /** Column index for high_cost. */
@@ -43,7 +49,7 @@ class HandlerHistory extends CursorSelAdapter
      *  @param onlyFavorites Only loads favorite shuffles if true. */
     HandlerHistory(Context context, boolean onlyFavorites) {
         super(context, R.layout.list_item_supply,
-                new String[]{DataDb._H_NAME, DataDb._H_CARDS},
+                new String[]{DataDb._H_NAME, DataDb._H_CARD_COUNT},
                 new int[]{R.id.name, R.id.desc});
         setChoiceMode(CHOICE_MODE_NONE);
         setViewBinder(this);
@@ -52,14 +58,15 @@ class HandlerHistory extends CursorSelAdapter
     }
 
     @Override
-    public void changeCursor(Cursor c) {
-        super.changeCursor(c);
-        if(c == null) return;
+    public Cursor swapCursor(Cursor c) {
+        Cursor old = super.swapCursor(c);
+        if(c == null) return old;
         _time = c.getColumnIndex(DataDb._H_TIME);
         _name = c.getColumnIndex(DataDb._H_NAME);
-        _cards = c.getColumnIndex(DataDb._H_CARDS);
+        _card_count = c.getColumnIndex(DataDb._H_CARD_COUNT);
         _high_cost = c.getColumnIndex(DataDb._H_HIGH_COST);
         _shelters = c.getColumnIndex(DataDb._H_SHELTERS);
+        return old;
     }
 
     @Override
@@ -82,9 +89,8 @@ class HandlerHistory extends CursorSelAdapter
             return true;
 
         // The description field.
-        } else if(columnIndex == _cards) {
-            // Count the number of cards
-            int cards = Utils.countChar(cursor.getString(_cards), ',')+1;
+        } else if(columnIndex == _card_count) {
+            int cards = cursor.getInt(_card_count);
             String desc = mContext.getResources()
                                   .getQuantityString(R.plurals.hist_card, cards, cards);
 
@@ -102,22 +108,33 @@ class HandlerHistory extends CursorSelAdapter
 
     @Override @NonNull
     public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-        CursorLoader c = new CursorLoader(mContext);
-        c.setProjection(new String[]{DataDb._H_TIME, DataDb._H_NAME, DataDb._H_CARDS,
-                                     DataDb._H_HIGH_COST, DataDb._H_SHELTERS});
-        c.setUri(Provider.URI_HIST);
-        c.setSortOrder(DataDb._H_TIME + " DESC");
-        if(onlyFav) c.setSelection(DataDb._H_NAME + " NOT NULL");
-        return c;
+        mLoader = new HistoryLoader(mContext,
+                                    new String[]{DataDb._H_TIME, DataDb._H_NAME,
+                                                 DataDb.COUNT_CARDS, DataDb._H_HIGH_COST,
+                                                 DataDb._H_SHELTERS},
+                                    onlyFav);
+        return mLoader;
     }
 
     @Override
     public void onLoadFinished(@NonNull Loader<Cursor> loader, Cursor data) {
-        changeCursor(data);
+        // The loader owns its pages, so the old cursor is not closed here.
+        swapCursor(data);
     }
 
     @Override
     public void onLoaderReset(@NonNull Loader<Cursor> loader) {
-        changeCursor(null);
+        swapCursor(null);
+    }
+
+    @Override
+    public void onScrollStateChanged(AbsListView view, int scrollState) {}
+
+    @Override
+    public void onScroll(AbsListView view, int firstVisibleItem,
+                         int visibleItemCount, int totalItemCount) {
+        if(mLoader != null && 0 < totalItemCount
+                && totalItemCount - PREFETCH <= firstVisibleItem + visibleItemCount)
+            mLoader.loadMore();
     }
-}
\ No newline at end of file
+}
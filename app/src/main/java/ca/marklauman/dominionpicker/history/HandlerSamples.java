@@ -11,13 +11,11 @@ import android.view.View;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.RequestOptions;
-
 import ca.marklauman.dominionpicker.R;
 import ca.marklauman.dominionpicker.database.Provider;
 import ca.marklauman.dominionpicker.database.TableSupply;
 import ca.marklauman.dominionpicker.settings.Pref;
+import ca.marklauman.dominionpicker.userinterface.imagefactories.SetIcons;
 import ca.marklauman.tools.CursorHandler;
 import ca.marklauman.tools.Utils;
 
@@ -28,8 +26,6 @@ class HandlerSamples extends SimpleCursorAdapter
 
     /** The context this handler is in */
     private final Context mContext;
-    /** Maps expansion names to expansion icons */
-    private final int[] exp_icons;
 
     /** Column index for set id */
     private int _set_id;
@@ -48,7 +44,6 @@ class HandlerSamples extends SimpleCursorAdapter
                 new int[]{R.id.name, R.id.set, R.id.set, R.id.desc}, 0);
         mContext = context;
         setViewBinder(this);
-        exp_icons = Utils.getResourceArray(context, R.array.card_set_icons);
     }
 
     @Override
@@ -67,14 +62,8 @@ class HandlerSamples extends SimpleCursorAdapter
     public boolean setViewValue(View view, Cursor cursor, int columnIndex) {
         if(columnIndex == _set_id) {
             // Map the set id to an image
-            int setImg = R.drawable.ic_set_unknown;
-            try{ setImg = exp_icons[cursor.getInt(_set_id)];
-            } catch (Exception ignored) {}
             view.setVisibility(View.VISIBLE);
-            Glide.with(view)
-                 .load(setImg)
-                 .apply(RequestOptions.noTransformation())
-                 .into((ImageView) view);
+            ((ImageView) view).setImageDrawable(SetIcons.get(mContext, cursor.getInt(_set_id)));
             return true;
 
         } else if(columnIndex == _set_name) {
@@ -0,0 +1,361 @@
+package ca.marklauman.dominionpicker.history;
+
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.MergeCursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.content.AsyncTaskLoader;
+import android.util.Log;
+
+import java.util.ArrayList;
+
+import ca.marklauman.dominionpicker.BuildConfig;
+import ca.marklauman.dominionpicker.database.DataDb;
+import ca.marklauman.dominionpicker.database.Provider;
+
+/** Loads the history table one page at a time, newest shuffles first.
+ *  Each page is found by its key (the time of the last shuffle on the previous page),
+ *  so loading a page costs the same no matter how far down the history it is.
+ *  The pages loaded so far are delivered together as one cursor.
+ *  When a single shuffle changes, only the page holding it is reloaded.
+ *  @author Mark Lauman */
+class HistoryLoader extends AsyncTaskLoader<Cursor> {
+    /** Tag used for logging. */
+    private static final String TAG = "ca.marklauman.dominionpicker.HistoryLoader";
+    /** Number of shuffles on each page. */
+    static final int PAGE_SIZE = 50;
+    /** Uri used to load one page. */
+    private static final Uri URI_PAGE = Provider.URI_HIST.buildUpon()
+                                                         .appendQueryParameter(Provider.PARAM_LIMIT,
+                                                                               "" + PAGE_SIZE)
+                                                         .build();
+    /** Value of {@link #mAfter} when every page is reloaded. */
+    private static final long RELOAD = -1L;
+    /** Lower bound of a page that reaches the end of the history. */
+    private static final long END = Long.MIN_VALUE;
+
+    /** Observes the history for changes. */
+    private final RowObserver mObserver = new RowObserver();
+    /** Columns loaded for each shuffle. */
+    private final String[] mProjection;
+    /** Selection applied to each page. Its last argument is the page key. */
+    private final String mSelection;
+    /** Selection used to reload a page. Its last arguments are the page's bounds. */
+    private final String mRangeSelection;
+
+    /** The pages delivered so far (main thread only). */
+    private final ArrayList<Page> mPages = new ArrayList<>();
+    /** The cursor made of {@link #mPages} (main thread only). */
+    private Cursor mCursor;
+    /** True while pages are loading (main thread only). */
+    private boolean mLoading = false;
+    /** True while {@link #mObserver} is registered (main thread only). */
+    private boolean mObserving = false;
+
+    /** Key of the page to load next, or {@link #RELOAD} to reload every page. */
+    private volatile long mAfter = RELOAD;
+    /** The page to reload on its own, or null if there is none. */
+    private volatile Page mRefresh = null;
+    /** Number of pages loaded when every page is reloaded. */
+    private volatile int mReloadPages = 1;
+
+
+    /** Create a new history loader.
+     *  @param context The context of the loader.
+     *  @param projection Columns loaded for each shuffle.
+     *  @param onlyFavorites True to only load favorite shuffles. */
+    HistoryLoader(Context context, String[] projection, boolean onlyFavorites) {
+        super(context);
+        mProjection = projection;
+        String fav = onlyFavorites ? DataDb._H_NAME + " NOT NULL AND " : "";
+        mSelection = fav + DataDb._H_TIME + "<?";
+        mRangeSelection = fav + DataDb._H_TIME + "<? AND " + DataDb._H_TIME + ">=?";
+    }
+
+
+    /** Start loading the next page, if there is one and no page is loading.
+     *  Must be called on the main thread. */
+    void loadMore() {
+        if(mLoading || mCursor == null || !isStarted()) return;
+        long lower = mPages.get(mPages.size() - 1).lower;
+        if(lower == END) return;
+        mAfter = lower;
+        forceLoad();
+    }
+
+
+    /** Called on the main thread when a shuffle changes.
+     *  @param uri The uri of the shuffle, or null if many shuffles changed. */
+    private void rowChanged(Uri uri) {
+        long time;
+        try {
+            time = uri == null ? -1L : ContentUris.parseId(uri);
+        } catch(NumberFormatException e) {
+            time = -1L;
+        }
+        if(time < 0L || mLoading || mCursor == null || !isStarted()) {
+            onContentChanged();
+            return;
+        }
+        // Shuffles past the loaded pages will be seen when their page loads.
+        for(Page page : mPages) {
+            if(page.lower <= time && time < page.upper) {
+                mRefresh = page;
+                forceLoad();
+                return;
+            }
+        }
+    }
+
+
+    @Override
+    protected void onForceLoad() {
+        mLoading = true;
+        super.onForceLoad();
+    }
+
+
+    @Override
+    public void onContentChanged() {
+        // The history changed, so every page must be reloaded.
+        mAfter = RELOAD;
+        mRefresh = null;
+        super.onContentChanged();
+    }
+
+
+    @Override
+    public Cursor loadInBackground() {
+        long start = System.nanoTime();
+        ArrayList<Page> pages = new ArrayList<>();
+        Page refresh = mRefresh;
+        long after = mAfter;
+        try {
+            if(refresh != null) {
+                pages.add(loadRange(refresh.upper, refresh.lower));
+            } else if(after != RELOAD) {
+                pages.add(loadPage(after));
+            } else {
+                // Reload as many pages as were shown before
+                long key = Long.MAX_VALUE;
+                for(int i = 0; i < mReloadPages; i++) {
+                    Page page = loadPage(key);
+                    pages.add(page);
+                    if(page.lower == END) break;
+                    key = page.lower;
+                }
+            }
+        } catch(RuntimeException e) {
+            for(Page page : pages) page.cursor.close();
+            throw e;
+        }
+        if(BuildConfig.DEBUG) {
+            int rows = 0;
+            for(Page page : pages) rows += page.cursor.getCount();
+            Log.d(TAG, "loaded " + pages.size() + " pages (" + rows + " shuffles) in "
+                       + (System.nanoTime() - start) / 1000000L + "ms");
+        }
+        return new Batch(pages, refresh, after != RELOAD);
+    }
+
+
+    /** Load the page of shuffles older than the key. */
+    private Page loadPage(long key) {
+        Cursor c = query(URI_PAGE, mSelection, new String[]{"" + key});
+        long lower = END;
+        if(PAGE_SIZE <= c.getCount() && c.moveToLast())
+            lower = c.getLong(c.getColumnIndex(DataDb._H_TIME));
+        return new Page(c, key, lower);
+    }
+
+
+    /** Load every shuffle between two bounds as one page.
+     *  @param upper The shuffles loaded are older than this.
+     *  @param lower The shuffles loaded are this old or newer. */
+    private Page loadRange(long upper, long lower) {
+        Cursor c = query(Provider.URI_HIST, mRangeSelection,
+                         new String[]{"" + upper, "" + lower});
+        return new Page(c, upper, lower);
+    }
+
+
+    /** Query the history, newest shuffles first. */
+    private Cursor query(Uri uri, String selection, String[] selectionArgs) {
+        Cursor c = getContext().getContentResolver()
+                               .query(uri, mProjection, selection, selectionArgs,
+                                      DataDb._H_TIME + " DESC");
+        if(c == null) throw new IllegalStateException("history unavailable");
+        // Fill the cursor window while we are still in the background.
+        c.getCount();
+        return c;
+    }
+
+
+    @Override
+    public void deliverResult(Cursor data) {
+        Batch batch = (Batch) data;
+        mAfter = RELOAD;
+        mRefresh = null;
+        mLoading = false;
+        if(isReset()) {
+            if(batch != null) batch.closePages();
+            return;
+        }
+        if(batch == null) return;
+
+        // Add the new pages to the old ones, or replace the old ones.
+        ArrayList<Cursor> oldPages = new ArrayList<>(0);
+        if(batch.refreshed != null) {
+            int index = mPages.indexOf(batch.refreshed);
+            if(index < 0) {
+                // The page was replaced while it was reloading.
+                batch.closePages();
+                return;
+            }
+            oldPages.add(batch.refreshed.cursor);
+            mPages.set(index, batch.pages.get(0));
+        } else if(batch.append) {
+            mPages.addAll(batch.pages);
+        } else {
+            for(Page page : mPages) oldPages.add(page.cursor);
+            mPages.clear();
+            mPages.addAll(batch.pages);
+        }
+        mReloadPages = mPages.size();
+        Cursor[] cursors = new Cursor[mPages.size()];
+        for(int i = 0; i < cursors.length; i++)
+            cursors[i] = mPages.get(i).cursor;
+        mCursor = new MergeCursor(cursors);
+
+        if(isStarted()) super.deliverResult(mCursor);
+        // The replaced pages are closed once they are no longer displayed
+        for(Cursor page : oldPages) page.close();
+    }
+
+
+    @Override
+    protected void onStartLoading() {
+        if(!mObserving) {
+            getContext().getContentResolver()
+                        .registerContentObserver(Provider.URI_HIST, true, mObserver);
+            mObserving = true;
+        }
+        if(mCursor != null) deliverCached();
+        if(takeContentChanged() || mCursor == null) forceLoad();
+    }
+
+
+    /** Deliver the pages loaded so far without loading anything. */
+    private void deliverCached() {
+        super.deliverResult(mCursor);
+    }
+
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+        mAfter = RELOAD;
+        mRefresh = null;
+        mLoading = false;
+    }
+
+
+    @Override
+    public void onCanceled(Cursor data) {
+        if(data != null) ((Batch) data).closePages();
+    }
+
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        if(mObserving) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mObserving = false;
+        }
+        for(Page page : mPages) page.cursor.close();
+        mPages.clear();
+        mCursor = null;
+        mLoading = false;
+        mReloadPages = 1;
+    }
+
+
+    /** One page of shuffles and the range of times it covers. */
+    private static class Page {
+        /** The shuffles on this page. */
+        final Cursor cursor;
+        /** Every shuffle on this page is older than this. */
+        final long upper;
+        /** Every shuffle on this page is this old or newer.
+         *  {@link #END} if this page reaches the end of the history. */
+        final long lower;
+
+        Page(Cursor cursor, long upper, long lower) {
+            this.cursor = cursor;
+            this.upper = upper;
+            this.lower = lower;
+        }
+    }
+
+
+    /** Pages loaded by one background load, on their way to the main thread.
+     *  Wraps the first page so it can be passed as a cursor.
+     *  Closing a batch does nothing, so the pages can be kept. */
+    private static class Batch extends CursorWrapper {
+        /** The pages loaded. */
+        final ArrayList<Page> pages;
+        /** The page replaced by the one page loaded, or null if no page was reloaded alone. */
+        final Page refreshed;
+        /** True if the pages follow the pages already delivered.
+         *  False if they replace them. */
+        final boolean append;
+
+        Batch(ArrayList<Page> pages, Page refreshed, boolean append) {
+            super(pages.get(0).cursor);
+            this.pages = pages;
+            this.refreshed = refreshed;
+            this.append = append;
+        }
+
+        @Override
+        public void close() {}
+
+        /** Close the pages in this batch. */
+        void closePages() {
+            for(Page page : pages) page.cursor.close();
+        }
+    }
+
+
+    /** Hears about changes to the history on the main thread.
+     *  Single shuffles are notified on their own uri, which reloads the page
+     *  holding that shuffle. Anything else reloads every page. */
+    private class RowObserver extends ContentObserver {
+        RowObserver() {
+            super(new Handler(Looper.getMainLooper()));
+        }
+
+        @Override
+        public boolean deliverSelfNotifications() {
+            return true;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            // Only called on its own before Jelly Bean, where the uri is not known.
+            rowChanged(null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            rowChanged(uri);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package ca.marklauman.dominionpicker.history;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.AsyncTask;
+import android.os.Bundle;
+
+import ca.marklauman.dominionpicker.database.Provider;
+import ca.marklauman.dominionpicker.settings.Pref;
+
+/** This task removes old shuffles from the history, following the retention set by
+ *  {@link Pref#HIST_MAX_ROWS} and {@link Pref#HIST_MAX_DAYS}. Favorites are kept.
+ *  It is run in the background each time the app starts, and when the retention
+ *  is changed in {@link ca.marklauman.dominionpicker.settings.ActivityOptions}.
+ *  @author Mark Lauman */
+public class HistoryPruner extends AsyncTask<Void, Void, Void> {
+    /** Number of milliseconds in a day. */
+    private static final long DAY = 24L * 60L * 60L * 1000L;
+
+    /** Context used to reach the {@link Provider}. */
+    private final Context mContext;
+
+    /** Create a new pruner.
+     *  @param context Any context in the app. Only the application context is kept. */
+    public HistoryPruner(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /** Start the pruner without holding up other background tasks. */
+    public void start() {
+        executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    @Override
+    protected Void doInBackground(Void... ignored) {
+        SharedPreferences pref = Pref.get(mContext);
+        int maxRows = pref.getInt(Pref.HIST_MAX_ROWS, 0);
+        int maxDays = pref.getInt(Pref.HIST_MAX_DAYS, 0);
+        if(maxRows <= 0 && maxDays <= 0) return null;
+
+        Bundle extras = new Bundle();
+        extras.putInt(Provider.EXTRA_MAX_ROWS, Math.max(0, maxRows));
+        if(0 < maxDays)
+            extras.putLong(Provider.EXTRA_MIN_TIME, System.currentTimeMillis() - maxDays * DAY);
+        mContext.getContentResolver()
+                .call(Provider.URI_HIST, Provider.METHOD_PRUNE_HISTORY, null, extras);
+        return null;
+    }
+}
@@ -0,0 +1,267 @@
+package ca.marklauman.dominionpicker.history;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+import android.util.Log;
+import android.widget.Toast;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ca.marklauman.dominionpicker.R;
+import ca.marklauman.dominionpicker.database.DataDb;
+import ca.marklauman.dominionpicker.database.Provider;
+
+/** This task copies the history (favorites included) to or from a json document.
+ *  Shuffles are written one at a time straight from the cursor, and read back
+ *  one at a time and inserted in batches, so any number of shuffles can be copied
+ *  without holding them all in memory. Shuffles already in the history are kept
+ *  as they are when importing.
+ *  @author Mark Lauman */
+public class HistoryTransfer extends AsyncTask<Void, Void, Integer> {
+    /** Tag used for this task's logs. */
+    private static final String TAG = "ca.marklauman.dominionpicker.HistoryTransfer";
+    /** Value of {@link #KEY_FORMAT} in the documents written. */
+    private static final String FORMAT = "dominionpicker-history";
+    /** Version of the document format written. */
+    private static final int VERSION = 1;
+    /** Key of the format name in the document. */
+    private static final String KEY_FORMAT = "format";
+    /** Key of the format version in the document. */
+    private static final String KEY_VERSION = "version";
+    /** Key of the array of shuffles in the document. */
+    private static final String KEY_SHUFFLES = "shuffles";
+    /** Number of shuffles inserted by each transaction when importing. */
+    private static final int BATCH = 500;
+    /** Columns copied for each shuffle. Each is a key of the shuffle's json object. */
+    private static final String[] COLUMNS = {DataDb._H_TIME, DataDb._H_NAME, DataDb._H_CARDS,
+                                             DataDb._H_HIGH_COST, DataDb._H_SHELTERS,
+                                             DataDb._H_BANE};
+    /** The {@link #COLUMNS} as a list. */
+    private static final List<String> COLUMN_LIST = Arrays.asList(COLUMNS);
+    /** Columns from {@link #COLUMNS} storing text. The others store integers. */
+    private static final List<String> TEXT_COLUMNS = Arrays.asList(DataDb._H_NAME,
+                                                                   DataDb._H_CARDS);
+
+    /** The transfer running now, or null if there is none (main thread only).
+     *  Only one transfer runs at a time, even if the screen that started it is rebuilt. */
+    private static HistoryTransfer running = null;
+
+    /** Context used to reach the document and the {@link Provider}. */
+    private final Context mContext;
+    /** The document copied to or from. */
+    private final Uri mDocument;
+    /** True to export the history to the document, false to import it. */
+    private final boolean mExport;
+
+
+    /** Create a new transfer.
+     *  @param context Any context in the app. Only the application context is kept.
+     *  @param document The document copied to or from.
+     *  @param export True to export the history to the document, false to import it. */
+    public HistoryTransfer(Context context, Uri document, boolean export) {
+        mContext = context.getApplicationContext();
+        mDocument = document;
+        mExport = export;
+    }
+
+
+    /** True if a transfer is running. Must be called on the main thread. */
+    public static boolean isRunning() {
+        return running != null;
+    }
+
+
+    /** Start this transfer without holding up other background tasks.
+     *  Must be called on the main thread, and not while another transfer is running.
+     *  @see #isRunning() */
+    public void start() {
+        if(running != null) throw new IllegalStateException("a transfer is already running");
+        running = this;
+        executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+
+    @Override
+    protected Integer doInBackground(Void... ignored) {
+        ContentResolver resolver = mContext.getContentResolver();
+        long start = System.nanoTime();
+        int rows;
+        try {
+            if(mExport) {
+                OutputStream out = resolver.openOutputStream(mDocument, "w");
+                if(out == null) return -1;
+                rows = exportTo(resolver, out);
+            } else {
+                InputStream in = resolver.openInputStream(mDocument);
+                if(in == null) return -1;
+                rows = importFrom(resolver, in);
+            }
+        } catch(IOException | RuntimeException e) {
+            Log.e(TAG, (mExport ? "export" : "import") + " of " + mDocument + " failed", e);
+            return -1;
+        }
+        long millis = Math.max(1L, (System.nanoTime() - start) / 1000000L);
+        Log.i(TAG, (mExport ? "exported " : "imported ") + rows + " shuffles in " + millis
+                   + "ms (" + rows * 1000L / millis + " rows/s)");
+        return rows;
+    }
+
+
+    @Override
+    protected void onCancelled(Integer rows) {
+        if(running == this) running = null;
+    }
+
+
+    @Override
+    protected void onPostExecute(Integer rows) {
+        if(running == this) running = null;
+        String msg;
+        if(rows < 0)
+            msg = mContext.getString(mExport ? R.string.hist_export_failed
+                                             : R.string.hist_import_failed);
+        else
+            msg = mContext.getResources()
+                          .getQuantityString(mExport ? R.plurals.hist_exported
+                                                     : R.plurals.hist_imported,
+                                             rows, rows);
+        Toast.makeText(mContext, msg, Toast.LENGTH_LONG)
+             .show();
+    }
+
+
+    /** Write every shuffle in the history to a stream.
+     *  @param resolver Used to read the history.
+     *  @param out The stream written to. It is closed when done.
+     *  @return The number of shuffles written.
+     *  @throws IOException If the stream could not be written. */
+    static int exportTo(ContentResolver resolver, OutputStream out) throws IOException {
+        JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, "UTF-8")));
+        Cursor c = null;
+        int rows = 0;
+        try {
+            c = resolver.query(Provider.URI_HIST, COLUMNS, null, null, DataDb._H_TIME);
+            if(c == null) throw new IOException("history unavailable");
+            int[] cols = new int[COLUMNS.length];
+            for(int i = 0; i < cols.length; i++)
+                cols[i] = c.getColumnIndexOrThrow(COLUMNS[i]);
+
+            writer.beginObject();
+            writer.name(KEY_FORMAT).value(FORMAT);
+            writer.name(KEY_VERSION).value(VERSION);
+            writer.name(KEY_SHUFFLES).beginArray();
+            while(c.moveToNext()) {
+                writer.beginObject();
+                for(int i = 0; i < cols.length; i++) {
+                    writer.name(COLUMNS[i]);
+                    if(c.isNull(cols[i]))
+                        writer.nullValue();
+                    else if(TEXT_COLUMNS.contains(COLUMNS[i]))
+                        writer.value(c.getString(cols[i]));
+                    else
+                        writer.value(c.getLong(cols[i]));
+                }
+                writer.endObject();
+                rows++;
+            }
+            writer.endArray();
+            writer.endObject();
+        } finally {
+            if(c != null) c.close();
+            writer.close();
+        }
+        return rows;
+    }
+
+
+    /** Read shuffles from a stream and add them to the history.
+     *  Shuffles that are already in the history are skipped.
+     *  @param resolver Used to write to the history.
+     *  @param in The stream read from. It is closed when done.
+     *  @return The number of shuffles added.
+     *  @throws IOException If the stream could not be read or is not a history document. */
+    static int importFrom(ContentResolver resolver, InputStream in) throws IOException {
+        JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(in, "UTF-8")));
+        ArrayList<ContentValues> batch = new ArrayList<>(BATCH);
+        int rows = 0;
+        try {
+            reader.beginObject();
+            while(reader.hasNext()) {
+                String name = reader.nextName();
+                if(KEY_FORMAT.equals(name)) {
+                    if(!FORMAT.equals(reader.nextString()))
+                        throw new IOException("not a history document");
+                } else if(KEY_SHUFFLES.equals(name)) {
+                    reader.beginArray();
+                    while(reader.hasNext()) {
+                        ContentValues shuffle = readShuffle(reader);
+                        if(shuffle == null) continue;
+                        batch.add(shuffle);
+                        if(BATCH <= batch.size()) rows += insert(resolver, batch);
+                    }
+                    reader.endArray();
+                } else reader.skipValue();
+            }
+            reader.endObject();
+            rows += insert(resolver, batch);
+        } catch(IllegalStateException | NumberFormatException e) {
+            // The document does not have the structure expected
+            throw new IOException("not a history document", e);
+        } finally {
+            reader.close();
+        }
+        return rows;
+    }
+
+
+    /** Read one shuffle.
+     *  @return The shuffle's values, or null if it has no time. */
+    private static ContentValues readShuffle(JsonReader reader) throws IOException {
+        ContentValues values = new ContentValues();
+        reader.beginObject();
+        while(reader.hasNext()) {
+            String col = reader.nextName();
+            if(!COLUMN_LIST.contains(col)) {
+                reader.skipValue();
+            } else if(reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                values.putNull(col);
+            } else if(TEXT_COLUMNS.contains(col)) {
+                values.put(col, reader.nextString());
+            } else if(reader.peek() == JsonToken.BOOLEAN) {
+                values.put(col, reader.nextBoolean() ? 1L : 0L);
+            } else {
+                values.put(col, reader.nextLong());
+            }
+        }
+        reader.endObject();
+        return values.getAsLong(DataDb._H_TIME) == null ? null : values;
+    }
+
+
+    /** Insert a batch of shuffles in one transaction and empty the batch.
+     *  @return The number of shuffles added. */
+    private static int insert(ContentResolver resolver, ArrayList<ContentValues> batch) {
+        if(batch.size() == 0) return 0;
+        int rows = resolver.bulkInsert(Provider.URI_HIST,
+                                       batch.toArray(new ContentValues[batch.size()]));
+        batch.clear();
+        return rows;
+    }
+}
@@ -4,8 +4,13 @@ import android.os.Bundle;
 import android.support.v7.app.ActionBar;
 import android.support.v7.app.AppCompatActivity;
 import android.view.MenuItem;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.Spinner;
 
 import ca.marklauman.dominionpicker.R;
+import ca.marklauman.dominionpicker.history.HistoryPruner;
 
 /** Very simple activity for the options screen.
  *  @author Mark Lauman  */
@@ -17,6 +22,12 @@ public class ActivityOptions extends AppCompatActivity {
         setContentView(R.layout.activity_options);
         ActionBar ab = getSupportActionBar();
         if(ab != null) ab.setDisplayHomeAsUpEnabled(true);
+
+        // The history retention choices
+        setupChoice(R.id.hist_max_rows, Pref.HIST_MAX_ROWS,
+                    R.array.hist_max_rows_names, R.array.hist_max_rows_values);
+        setupChoice(R.id.hist_max_days, Pref.HIST_MAX_DAYS,
+                    R.array.hist_max_days_names, R.array.hist_max_days_values);
     }
 
     @Override
@@ -29,4 +40,47 @@ public class ActivityOptions extends AppCompatActivity {
         }
         return false;
     }
-}
\ No newline at end of file
+
+
+    /** Set up a spinner that chooses the value of an integer preference.
+     *  @param spinnerId The id of the spinner.
+     *  @param key The preference the spinner sets.
+     *  @param namesId The names of the choices (a string array).
+     *  @param valuesId The values of the choices, in the same order (an integer array). */
+    private void setupChoice(int spinnerId, final String key, int namesId, int valuesId) {
+        final int[] values = getResources().getIntArray(valuesId);
+        ArrayAdapter<CharSequence> adapter
+                = ArrayAdapter.createFromResource(this, namesId,
+                                                  android.R.layout.simple_spinner_item);
+        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        Spinner spinner = findViewById(spinnerId);
+        spinner.setAdapter(adapter);
+        spinner.setSelection(choiceOf(values, Pref.get(this).getInt(key, 0)), false);
+        spinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int pos, long id) {
+                if(Pref.get(ActivityOptions.this).getInt(key, 0) == values[pos]) return;
+                Pref.edit(ActivityOptions.this)
+                    .putInt(key, values[pos])
+                    .apply();
+                // Apply the new limit now, instead of the next time the app starts
+                new HistoryPruner(ActivityOptions.this).start();
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {}
+        });
+    }
+
+
+    /** Find the choice closest to a value, without going below it.
+     *  The first choice (0, which keeps everything) is used if none is that large.
+     *  @param values The values of the choices, in increasing order.
+     *  @param value The value to find. */
+    private static int choiceOf(int[] values, int value) {
+        if(value <= 0) return 0;
+        for(int i = 1; i < values.length; i++)
+            if(value <= values[i]) return i;
+        return 0;
+    }
+}
@@ -0,0 +1,252 @@
+package ca.marklauman.dominionpicker.settings;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/** An immutable set of non-negative ids (such as card, set or cost ids), stored as a bitset.
+ *  Sets are read from the preferences once, after which checking an id is a single bit test.
+ *  Large sets (such as the card selections) are saved with {@link #encode()},
+ *  which stores the bits themselves instead of a comma-separated list of ids.
+ *  @author Mark Lauman */
+public final class CardBits {
+    /** The set with no ids in it. */
+    public static final CardBits EMPTY = new CardBits(new long[0]);
+    /** Prefix of sets saved by {@link #encode()}. */
+    private static final String V1 = "v1:";
+    /** Digits of the url-safe base64 encoding used by {@link #encode()}. */
+    private static final char[] BASE64
+            = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+    /** The bits of the set. Bit {@code n % 64} of word {@code n / 64} is set if
+     *  {@code n} is in the set. The last word is never 0. */
+    private final long[] words;
+    /** Number of ids in the set. */
+    private final int size;
+
+
+    /** Create a set from its bits. The array is kept, so it must not be changed after. */
+    private CardBits(long[] words) {
+        int len = words.length;
+        while(0 < len && words[len - 1] == 0L) len--;
+        this.words = len == words.length ? words : Arrays.copyOf(words, len);
+        int count = 0;
+        for(long word : this.words) count += Long.bitCount(word);
+        size = count;
+    }
+
+
+    /** Read a set saved by {@link #encode()} or a comma-separated list of ids.
+     *  In a list, empty entries, negative ids and entries that are not numbers are ignored.
+     *  @param values The saved set, such as those in the preferences. May be null.
+     *  @return The set of those ids. Sets saved by {@link #encode()} that are
+     *          not valid are read as empty. */
+    public static CardBits parse(String values) {
+        if(values == null || values.length() == 0) return EMPTY;
+        if(values.startsWith(V1)) return decode(values);
+        long[] words = new long[0];
+        for(String val : values.split(",")) {
+            long id;
+            try {
+                id = Long.parseLong(val.trim());
+            } catch(NumberFormatException ignored) {
+                continue;
+            }
+            words = set(words, id);
+        }
+        return new CardBits(words);
+    }
+
+
+    /** Create a set from some ids. Negative ids are ignored. */
+    public static CardBits of(long... ids) {
+        return EMPTY.with(ids);
+    }
+
+
+    /** Create a set from the bits of a {@link BitSet}. */
+    public static CardBits of(BitSet bits) {
+        long[] words = new long[(bits.length() + 63) >>> 6];
+        for(int id = bits.nextSetBit(0); 0 <= id; id = bits.nextSetBit(id + 1))
+            words[id >>> 6] |= 1L << id;
+        return new CardBits(words);
+    }
+
+
+    /** Set the bit for an id, growing the words if needed.
+     *  @return The words with the bit set (the same array if it did not grow). */
+    private static long[] set(long[] words, long id) {
+        if(id < 0L || Integer.MAX_VALUE < id) return words;
+        int word = (int)(id >>> 6);
+        if(words.length <= word)
+            words = Arrays.copyOf(words, Math.max(word + 1, words.length * 2));
+        words[word] |= 1L << id;
+        return words;
+    }
+
+
+    /** Check if an id is in this set. */
+    public boolean contains(long id) {
+        if(id < 0L) return false;
+        long word = id >>> 6;
+        return word < words.length && (words[(int) word] & (1L << id)) != 0L;
+    }
+
+
+    /** Number of ids in this set. */
+    public int size() {
+        return size;
+    }
+
+
+    /** True if this set has no ids in it. */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+
+    /** Get a set with the ids of this set and some more. */
+    public CardBits with(long... ids) {
+        if(ids.length == 0) return this;
+        long[] res = Arrays.copyOf(words, words.length);
+        for(long id : ids) res = set(res, id);
+        return new CardBits(res);
+    }
+
+
+    /** Get a set with the ids of both this set and another. */
+    public CardBits union(CardBits other) {
+        if(other.isEmpty()) return this;
+        if(isEmpty()) return other;
+        long[] res = Arrays.copyOf(words, Math.max(words.length, other.words.length));
+        for(int i = 0; i < other.words.length; i++)
+            res[i] |= other.words[i];
+        return new CardBits(res);
+    }
+
+
+    /** Get the ids in this set, from smallest to largest. */
+    public long[] toArray() {
+        long[] res = new long[size];
+        int pos = 0;
+        for(int w = 0; w < words.length; w++) {
+            long word = words[w];
+            while(word != 0L) {
+                res[pos++] = ((long) w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1L;
+            }
+        }
+        return res;
+    }
+
+
+    /** Copy this set into a {@link BitSet}, which may be changed freely. */
+    public BitSet toBitSet() {
+        BitSet res = new BitSet(words.length << 6);
+        for(int w = 0; w < words.length; w++) {
+            long word = words[w];
+            while(word != 0L) {
+                res.set((w << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1L;
+            }
+        }
+        return res;
+    }
+
+
+    /** Get this set as a mask string, to be bound as the argument of a
+     *  {@link ca.marklauman.dominionpicker.database.MaskFilter} selection.
+     *  Character {@code n} of the mask is '1' if {@code n} is in this set. */
+    public String mask() {
+        if(words.length == 0) return "";
+        int last = words.length - 1;
+        char[] mask = new char[(last << 6) + 64 - Long.numberOfLeadingZeros(words[last])];
+        for(int i = 0; i < mask.length; i++)
+            mask[i] = (words[i >>> 6] & (1L << i)) != 0L ? '1' : '0';
+        return new String(mask);
+    }
+
+
+    /** Save this set as a short string, to be read back by {@link #parse(String)}.
+     *  The string is a version prefix followed by the url-safe base64 encoding of the bits
+     *  (the bytes of each word from least to most significant, without trailing zero bytes).
+     *  @return The encoded set. */
+    public String encode() {
+        int bytes = words.length * 8;
+        if(bytes != 0) bytes -= Long.numberOfLeadingZeros(words[words.length - 1]) / 8;
+        StringBuilder res = new StringBuilder(V1.length() + (bytes * 4 + 2) / 3);
+        res.append(V1);
+        for(int i = 0; i < bytes; i += 3) {
+            int chunk = 0;
+            int count = Math.min(3, bytes - i);
+            for(int b = 0; b < 3; b++)
+                chunk = (chunk << 8) | (b < count ? getByte(i + b) : 0);
+            for(int c = 0; c <= count; c++)
+                res.append(BASE64[(chunk >>> (18 - 6 * c)) & 0x3F]);
+        }
+        return res.toString();
+    }
+
+
+    /** Get one byte of the bits, counting from the least significant byte of word 0. */
+    private int getByte(int index) {
+        return (int)(words[index >>> 3] >>> ((index & 7) * 8)) & 0xFF;
+    }
+
+
+    /** Read a set saved by {@link #encode()}. */
+    private static CardBits decode(String values) {
+        int chars = values.length() - V1.length();
+        if(chars % 4 == 1) return EMPTY;
+        int bytes = chars / 4 * 3 + Math.max(0, chars % 4 - 1);
+        long[] words = new long[(bytes + 7) / 8];
+        int bits = 0;
+        int buffer = 0;
+        int index = 0;
+        for(int i = V1.length(); i < values.length(); i++) {
+            int digit = digit(values.charAt(i));
+            if(digit < 0) return EMPTY;
+            buffer = (buffer << 6) | digit;
+            bits += 6;
+            if(bits < 8) continue;
+            bits -= 8;
+            words[index >>> 3] |= (long)((buffer >>> bits) & 0xFF) << ((index & 7) * 8);
+            index++;
+        }
+        return new CardBits(words);
+    }
+
+
+    /** Get the value of a base64 digit, or -1 if it is not one. */
+    private static int digit(char c) {
+        if('A' <= c && c <= 'Z') return c - 'A';
+        if('a' <= c && c <= 'z') return c - 'a' + 26;
+        if('0' <= c && c <= '9') return c - '0' + 52;
+        if(c == '-') return 62;
+        if(c == '_') return 63;
+        return -1;
+    }
+
+
+    /** Get this set as a comma-separated list of ids. */
+    @Override
+    public String toString() {
+        StringBuilder res = new StringBuilder();
+        for(long id : toArray()) {
+            if(res.length() != 0) res.append(',');
+            res.append(id);
+        }
+        return res.toString();
+    }
+
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof CardBits && Arrays.equals(words, ((CardBits) o).words);
+    }
+
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(words);
+    }
+}
@@ -4,11 +4,23 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.content.res.Resources;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
+import android.util.Log;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import ca.marklauman.dominionpicker.BuildConfig;
 import ca.marklauman.dominionpicker.R;
 import ca.marklauman.dominionpicker.database.TableCard;
 import ca.marklauman.tools.Utils;
@@ -19,8 +31,19 @@ import ca.marklauman.tools.Utils;
  *  @author Mark Lauman */
 public abstract class Pref implements OnSharedPreferenceChangeListener {
 
+    /** Tag used for this class's debug logs. */
+    private static final String TAG = "ca.marklauman.dominionpicker.Pref";
+
     /** Context of this app's application */
-    private static Context appContext;
+    private static volatile Context appContext;
+    /** True once {@link #setup(Context)} has been called. */
+    private static final AtomicBoolean setupStarted = new AtomicBoolean(false);
+    /** Released when {@link #setup(Context)} is done (successful or not). */
+    private static final CountDownLatch setupDone = new CountDownLatch(1);
+    /** The thread running {@link #setup(Context)}, or null when it is not running. */
+    private static volatile Thread setupThread;
+    /** Time the main thread has spent waiting for setup, in milliseconds (main thread only). */
+    private static long mainThreadWait = 0L;
 
     /////////// Active preference keys \\\\\\\\\\\
     /** Current preference version */
@@ -31,6 +54,12 @@ public abstract class Pref implements OnSharedPreferenceChangeListener {
     public static final String LIMIT_SUPPLY = "limit_supply";
     /** Maximum number of event cards in a supply. */
     public static final String LIMIT_EVENTS = "limit_event";
+    /** Maximum number of shuffles kept in the history, not counting favorites.
+     *  0 keeps every shuffle. */
+    public static final String HIST_MAX_ROWS = "hist_max_rows";
+    /** Maximum age of the shuffles kept in the history (in days), not counting favorites.
+     *  0 keeps every shuffle. */
+    public static final String HIST_MAX_DAYS = "hist_max_days";
 
     /** Filter used to exclude cards by set/expansion */
     public static final String FILT_SET = "filt_set";
@@ -42,9 +71,11 @@ public abstract class Pref implements OnSharedPreferenceChangeListener {
     public static final String FILT_POTION = "filt_potion";
     /** Filter used to exclude curse-giving cards */
     public static final String FILT_CURSE = "filt_curse";
-    /** Filter used to exclude specific cards */
+    /** Filter used to exclude specific cards.
+     *  Saved with {@link CardBits#encode()}. */
     public static final String FILT_CARD = "filt_card";
-    /** Filter used to specify required cards. */
+    /** Filter used to specify required cards.
+     *  Saved with {@link CardBits#encode()}. */
     public static final String REQ_CARDS = "req_cards";
 
     /** Filter used to provide the correct card translation for each set.
@@ -83,8 +114,39 @@ public abstract class Pref implements OnSharedPreferenceChangeListener {
     @Deprecated
     public static final String SELECTIONS = "selections";
 
-    /** Listener used to update the computed preferences when they change */
-    private static final Listener prefUpdater = new Listener() {
+    /** The current config, rebuilt each time the preferences change. */
+    private static volatile ShuffleConfig config;
+    /** Listeners added with {@link #addListener(Listener)}. */
+    private static final ArrayList<Listener> listeners = new ArrayList<>();
+
+    /** Keys that changed since the {@link #listeners} were last called (main thread only). */
+    private static final LinkedHashSet<String> changedKeys = new LinkedHashSet<>();
+    /** Handler used to call the {@link #listeners} once the current changes are done. */
+    private static final Handler dispatcher = new Handler(Looper.getMainLooper());
+    /** Number of listener reloads saved by passing changes on together. */
+    private static final AtomicInteger savedReloads = new AtomicInteger();
+
+    /** Calls the {@link #listeners} with every key changed since it was posted. */
+    private static final Runnable dispatch = new Runnable() {
+        @Override
+        public void run() {
+            Set<String> keys = Collections.unmodifiableSet(new LinkedHashSet<>(changedKeys));
+            changedKeys.clear();
+            Listener[] notify;
+            synchronized(Pref.class) {
+                notify = listeners.toArray(new Listener[listeners.size()]);
+            }
+            for(Listener listener : notify)
+                listener.onPreferencesChanged(keys);
+        }
+    };
+
+    /** The only listener registered with the SharedPreferences. It updates the computed
+     *  preferences and the {@link #config} right away. The change is passed on to the
+     *  {@link #listeners} afterwards, together with every other key changed by the same
+     *  edits (such as all the keys of one commit), so they only reload once. */
+    private static final OnSharedPreferenceChangeListener prefUpdater
+            = new OnSharedPreferenceChangeListener() {
         @Override
         public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
             switch(key) {
@@ -95,13 +157,19 @@ public abstract class Pref implements OnSharedPreferenceChangeListener {
                      updateSort(appContext);
                      break;
             }
+            config = new ShuffleConfig(sharedPreferences, appContext.getResources());
+
+            if(changedKeys.isEmpty()) dispatcher.post(dispatch);
+            changedKeys.add(key);
         }
     };
 
 
     //////////// Routine methods - used everywhere \\\\\\\\\\\\
-    /** Get the preferences for this app. */
+    /** Get the preferences for this app.
+     *  Waits for {@link #setup(Context)} to finish if it has not yet. */
     public static SharedPreferences get(Context context) {
+        awaitSetup();
         return PreferenceManager.getDefaultSharedPreferences(context);
     }
 
@@ -117,44 +185,104 @@ public abstract class Pref implements OnSharedPreferenceChangeListener {
         return appContext;
     }
 
-    /** Register a listener to receive preference change notifications. */
+    /** Register a listener to receive preference change notifications.
+     *  Listeners are held until they are removed with {@link #removeListener(Listener)}. */
     public static synchronized void addListener(Listener listener) {
-        get(appContext).registerOnSharedPreferenceChangeListener(listener);
+        if(!listeners.contains(listener)) listeners.add(listener);
     }
 
     /** Unregister a listener. */
     public static synchronized void removeListener(Listener listener) {
-        get(appContext).unregisterOnSharedPreferenceChangeListener(listener);
+        listeners.remove(listener);
+    }
+
+    /** Check if any of the watched preferences are among those that changed.
+     *  Listeners use this to decide if they should reload. When more than one watched
+     *  key changed, the reloads saved by reloading once are counted.
+     *  @param keys The keys passed to {@link Listener#onPreferencesChanged(Set)}.
+     *  @param watched The keys the listener reloads for.
+     *  @return True if the listener should reload. */
+    public static boolean anyChanged(Set<String> keys, String... watched) {
+        int changed = 0;
+        for(String key : watched)
+            if(keys.contains(key)) changed++;
+        if(1 < changed) {
+            int saved = savedReloads.addAndGet(changed - 1);
+            if(BuildConfig.DEBUG)
+                Log.d(TAG, changed + " changes handled by one reload (" + saved + " saved)");
+        }
+        return changed != 0;
+    }
+
+    /** Number of reloads saved so far by passing changed preferences on together. */
+    public static int savedReloads() {
+        return savedReloads.get();
+    }
+
+    /** Get the current config. It is replaced (not changed) when the preferences change,
+     *  so it should be retrieved again each time it is needed. */
+    public static ShuffleConfig config() {
+        ShuffleConfig res = config;
+        if(res != null) return res;
+        awaitSetup();
+        synchronized(Pref.class) {
+            if(config == null)
+                config = new ShuffleConfig(get(appContext), appContext.getResources());
+            return config;
+        }
     }
 
     /** Retrieves the current language filter ({@link #COMP_LANG}). */
     public static String languageFilter(Context context) {
-        return get(context).getString(COMP_LANG, "");
+        return config().languageFilter;
     }
 
     /** Retrieves the current card sort order ({@link #COMP_SORT_CARD}). */
     public static String cardSort(Context context) {
-        return get(context).getString(COMP_SORT_CARD, "");
+        return config().cardSort;
     }
 
     /** Retrieves the current card sort order ({@link #COMP_SORT_SET}). */
     public static String setSort(Context context) {
-        return get(context).getString(COMP_SORT_SET, "");
+        return config().setSort;
     }
 
 
     //////////// Preference setup (called on application start) \\\\\\\\\\\\
-    /** Set the preferences to default values, call for updates if needed and
-     *  retrieve the application context.
+    /** Start setting up the preferences on a background thread. The preferences are set to
+     *  their default values, updated from older versions and the computed preferences
+     *  are computed. Until this is done, {@link #get(Context)} waits for it.
+     *  Only the first call does anything.
      *  @param context A context within DominionPicker. */
     public static void setup(Context context) {
+        if(!setupStarted.compareAndSet(false, true)) return;
         appContext = context.getApplicationContext();
+        setupThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runSetup(appContext);
+                } finally {
+                    setupThread = null;
+                    setupDone.countDown();
+                }
+            }
+        }, "PrefSetup");
+        setupThread.start();
+    }
+
+
+    /** Set up the preferences. Each phase is timed.
+     *  @param context The application context. */
+    private static void runSetup(Context context) {
+        long start = System.nanoTime();
         Resources res = context.getResources();
         SharedPreferences pref = get(context);
 
         // Update the preferences as needed.
         int oldVersion = getVersion(pref);
         setDefaultValues(context);
+        long defaults = System.nanoTime();
         switch(oldVersion) {
             case -1: break; // preferences have been set for the first time
             case 0: update0(pref);
@@ -164,14 +292,56 @@ public abstract class Pref implements OnSharedPreferenceChangeListener {
             case 4: // v4 -> v5 adds sort_card. Setting default values is all that is needed.
             case 5: update5(pref);
             case 6: update6(pref);
+            case 7: update7(pref);
         }
         pref.edit().putInt(VERSION, res.getInteger(R.integer.pref_version))
             .apply();
+        long migrate = System.nanoTime();
 
         // Compute all computed preferences and add the listener.
         updateLanguage(context);
+        long language = System.nanoTime();
         updateSort(context);
-        addListener(prefUpdater);
+        long sort = System.nanoTime();
+        config = new ShuffleConfig(pref, res);
+        pref.registerOnSharedPreferenceChangeListener(prefUpdater);
+        long end = System.nanoTime();
+
+        if(BuildConfig.DEBUG)
+            Log.d(TAG, "preferences set up in " + (end - start) / 1000L + "us (defaults "
+                       + (defaults - start) / 1000L + "us, migration from v" + oldVersion + " "
+                       + (migrate - defaults) / 1000L + "us, language "
+                       + (language - migrate) / 1000L + "us, sort "
+                       + (sort - language) / 1000L + "us, config "
+                       + (end - sort) / 1000L + "us)");
+    }
+
+
+    /** Wait for {@link #setup(Context)} to finish.
+     *  Returns at once if it was never started, or if called by the setup itself. */
+    private static void awaitSetup() {
+        if(!setupStarted.get() || Thread.currentThread() == setupThread
+                || setupDone.getCount() == 0L)
+            return;
+        long start = SystemClock.uptimeMillis();
+        boolean interrupted = false;
+        while(true) {
+            try {
+                setupDone.await();
+                break;
+            } catch(InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if(interrupted) Thread.currentThread().interrupt();
+        if(Looper.myLooper() == Looper.getMainLooper())
+            mainThreadWait += SystemClock.uptimeMillis() - start;
+    }
+
+
+    /** Time the main thread has spent waiting for {@link #setup(Context)}, in milliseconds. */
+    public static long setupWaitMillis() {
+        return mainThreadWait;
     }
 
 
@@ -189,9 +359,8 @@ public abstract class Pref implements OnSharedPreferenceChangeListener {
         // Determine current state
         final Resources res = context.getResources();
         final SharedPreferences pref = get(context);
-        final String[] defTrans  = res.getStringArray(R.array.def_trans);
-        String[] rawTrans = pref.getString(FILT_LANG, res.getString(R.string.filt_lang_def))
-                                .split(",");
+        // Each set's language, with "0" values replaced by the set's default language
+        String[] rawTrans = ShuffleConfig.readLanguages(pref, res);
 
         // Update the app language if needed.
         final String oldLang = pref.getString(APP_LANG, "");
@@ -199,11 +368,6 @@ public abstract class Pref implements OnSharedPreferenceChangeListener {
         if(!oldLang.equals(newLang))
             pref.edit().putString(APP_LANG, newLang).apply();
 
-        // Replace "0" values with the default language for the set
-        for(int i=0; i<rawTrans.length; i++)
-            if(rawTrans[i].equals("0"))
-                rawTrans[i] = defTrans[i];
-
         // Group sets together by language
         HashMap<String, String> transMap = new HashMap<>(2);
         for(int set=0; set<rawTrans.length; set++) {
@@ -298,11 +462,15 @@ public abstract class Pref implements OnSharedPreferenceChangeListener {
         if(!prefs.contains(LIMIT_EVENTS))
             edit.putInt(LIMIT_EVENTS, res.getInteger(R.integer.limit_event_def));
         if(!prefs.contains(FILT_CARD))
-            edit.putString(FILT_CARD, "");
+            edit.putString(FILT_CARD, CardBits.EMPTY.encode());
         if(!prefs.contains(REQ_CARDS))
-            edit.putString(REQ_CARDS, "");
+            edit.putString(REQ_CARDS, CardBits.EMPTY.encode());
         if(!prefs.contains(ACTIVE_TAB))
             edit.putInt(ACTIVE_TAB, res.getInteger(R.integer.def_tab));
+        if(!prefs.contains(HIST_MAX_ROWS))
+            edit.putInt(HIST_MAX_ROWS, res.getInteger(R.integer.hist_max_rows_def));
+        if(!prefs.contains(HIST_MAX_DAYS))
+            edit.putInt(HIST_MAX_DAYS, res.getInteger(R.integer.hist_max_days_def));
         edit.apply();
     }
 
@@ -530,6 +698,15 @@ public abstract class Pref implements OnSharedPreferenceChangeListener {
              .apply();
     }
 
+    /** Updates preferences from v7 to v8. Does not detect version number */
+    private static void update7(SharedPreferences prefs) {
+        // The card selections are saved as bitsets instead of comma-separated lists
+        prefs.edit()
+             .putString(FILT_CARD, CardBits.parse(prefs.getString(FILT_CARD, "")).encode())
+             .putString(REQ_CARDS, CardBits.parse(prefs.getString(REQ_CARDS, "")).encode())
+             .apply();
+    }
+
     /** Check if a value is within a given range */
     private static boolean within(int val, int startRange, int endRange) {
         return startRange <= val && val <= endRange;
@@ -537,5 +714,10 @@ public abstract class Pref implements OnSharedPreferenceChangeListener {
 
 
     /** Listeners added to {@link Pref} will be notified when it learns of preference changes. */
-    public interface Listener extends SharedPreferences.OnSharedPreferenceChangeListener {}
+    public interface Listener {
+        /** Called on the main thread after preferences have changed.
+         *  Preferences changed together (such as by one commit) are passed on together.
+         *  @param keys The keys of the preferences that changed. */
+        void onPreferencesChanged(Set<String> keys);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,155 @@
+package ca.marklauman.dominionpicker.settings;
+
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+
+import java.util.Arrays;
+
+import ca.marklauman.dominionpicker.FragmentPicker;
+import ca.marklauman.dominionpicker.R;
+
+/** The preferences used to pick and display cards, read and parsed once.
+ *  A new config is made by {@link Pref} each time the preferences change,
+ *  and the current one is retrieved with {@link Pref#config()}.
+ *  A config never changes once it is made, so it may be read from any thread.
+ *  @author Mark Lauman */
+public final class ShuffleConfig {
+    /** Sort id of the card set ({@link #cardSortKeys()}). */
+    public static final int SORT_SET = 0;
+    /** Sort id of the card name. */
+    public static final int SORT_NAME = 1;
+    /** Sort id of the set release date. */
+    public static final int SORT_RELEASE = 2;
+    /** Sort id of the card cost. */
+    public static final int SORT_COST = 3;
+    /** Sort id of the card type. */
+    public static final int SORT_TYPE = 4;
+    /** Sort id of the card language. */
+    public static final int SORT_LANGUAGE = 5;
+    /** Sort id that puts promotional cards first. */
+    public static final int SORT_PROMO = 6;
+
+    /** Card sets that are selected ({@link Pref#FILT_SET}). */
+    public final CardBits sets;
+    /** Coin costs that are filtered out ({@link Pref#FILT_COST}). */
+    public final CardBits costs;
+    /** Debt costs that are filtered out ({@link Pref#FILT_DEBT}). */
+    public final CardBits debts;
+    /** True if cards that need a potion may be used ({@link Pref#FILT_POTION}). */
+    public final boolean potion;
+    /** True if curse-giving cards may be used ({@link Pref#FILT_CURSE}). */
+    public final boolean curse;
+    /** Cards that are deselected ({@link Pref#FILT_CARD}). */
+    public final CardBits filtered;
+    /** Cards that are required ({@link Pref#REQ_CARDS}). */
+    public final CardBits required;
+    /** Cards that are never shuffled in at random: the filtered and required cards. */
+    public final CardBits excluded;
+    /** Maximum number of kingdom cards in a supply ({@link Pref#LIMIT_SUPPLY}). */
+    public final int limitSupply;
+    /** Maximum number of event cards in a supply ({@link Pref#LIMIT_EVENTS}). */
+    public final int limitEvents;
+    /** Filter giving the correct card translation for each set ({@link Pref#COMP_LANG}). */
+    public final String languageFilter;
+    /** Sort order of cards ({@link Pref#COMP_SORT_CARD}). */
+    public final String cardSort;
+    /** Sort order of card sets ({@link Pref#COMP_SORT_SET}). */
+    public final String setSort;
+
+    /** The arguments of {@link FragmentPicker#FILTER}. */
+    private final String[] filterArgs;
+    /** The ids of the card sort columns ({@link Pref#SORT_CARD}), in order.
+     *  Ends with the card name, where sorting ends. */
+    private final int[] cardSortKeys;
+
+
+    /** Read a config from the preferences.
+     *  @param pref The preferences of this app.
+     *  @param res Resources used for default values. */
+    ShuffleConfig(SharedPreferences pref, Resources res) {
+        sets = CardBits.parse(pref.getString(Pref.FILT_SET, res.getString(R.string.filt_set_def)));
+        costs = CardBits.parse(pref.getString(Pref.FILT_COST, ""));
+        debts = CardBits.parse(pref.getString(Pref.FILT_DEBT, ""));
+        potion = pref.getBoolean(Pref.FILT_POTION, true);
+        curse = pref.getBoolean(Pref.FILT_CURSE, true);
+        filtered = CardBits.parse(pref.getString(Pref.FILT_CARD, ""));
+        required = CardBits.parse(pref.getString(Pref.REQ_CARDS, ""));
+        excluded = filtered.union(required);
+        limitSupply = pref.getInt(Pref.LIMIT_SUPPLY, 10);
+        limitEvents = pref.getInt(Pref.LIMIT_EVENTS, 2);
+        languageFilter = pref.getString(Pref.COMP_LANG, "");
+        cardSort = pref.getString(Pref.COMP_SORT_CARD, "");
+        setSort = pref.getString(Pref.COMP_SORT_SET, "");
+        filterArgs = new String[]{sets.mask(), potion ? "1" : "0",
+                                  costs.mask(), debts.mask(), curse ? "1" : "0"};
+        cardSortKeys = readSortKeys(pref.getString(Pref.SORT_CARD,
+                                                   res.getString(R.string.sort_card_def)));
+    }
+
+
+    /** Read the card sort columns the same way {@link Pref#COMP_SORT_CARD} is built:
+     *  up to the card name, which is always the last. */
+    private static int[] readSortKeys(String sort) {
+        String[] raw = sort.split(",");
+        int[] keys = new int[raw.length + 1];
+        int count = 0;
+        for(String key : raw) {
+            int id;
+            try {
+                id = Integer.parseInt(key.trim());
+            } catch(NumberFormatException ignored) {
+                continue;
+            }
+            if(id == SORT_NAME) break;
+            keys[count++] = id;
+        }
+        keys[count++] = SORT_NAME;
+        return Arrays.copyOf(keys, count);
+    }
+
+
+    /** Read the language used for each card set from {@link Pref#FILT_LANG}.
+     *  Sets with no language chosen use their default language.
+     *  @param pref The preferences of this app.
+     *  @param res Resources used for default values.
+     *  @return The language of each set, by set id. */
+    static String[] readLanguages(SharedPreferences pref, Resources res) {
+        String[] defTrans = res.getStringArray(R.array.def_trans);
+        String[] langs = pref.getString(Pref.FILT_LANG, res.getString(R.string.filt_lang_def))
+                             .split(",");
+        for(int i = 0; i < langs.length; i++)
+            if(langs[i].equals("0") && i < defTrans.length)
+                langs[i] = defTrans[i];
+        return langs;
+    }
+
+
+    /** Check a card against the set, cost, potion and curse filters.
+     *  This is the same test as {@link FragmentPicker#FILTER}, done in memory.
+     *  @param set The id of the card's set.
+     *  @param potion True if the card costs a potion.
+     *  @param cost The coin cost of the card.
+     *  @param debt The debt cost of the card.
+     *  @param curser True if the card gives out curses.
+     *  @return True if the card passes the filters. */
+    public boolean allows(int set, boolean potion, int cost, int debt, boolean curser) {
+        return sets.contains(set)
+               && (this.potion || !potion)
+               && !costs.contains(cost)
+               && !debts.contains(debt)
+               && (curse || !curser);
+    }
+
+
+    /** Get the ids of the card sort columns, in order. Each is an index of
+     *  {@code R.array.sort_card_col}. The last is always {@link #SORT_NAME}. */
+    public int[] cardSortKeys() {
+        return cardSortKeys.clone();
+    }
+
+
+    /** Get the arguments of {@link FragmentPicker#FILTER}, in order. */
+    public String[] filterArgs() {
+        return filterArgs.clone();
+    }
+}
@@ -88,10 +88,17 @@ public class CardColorFactory {
 
 
     public void updateBackground(@NonNull View view, @NonNull Cursor cursor) {
-        if(column == null) {
-            view.setBackgroundResource(android.R.color.transparent);
-            return;
-        }
+        updateBackground(view, getColors(cursor));
+    }
+
+
+    /** Work out the colors of the card at the cursor's position.
+     *  Only one thread should use this at a time.
+     *  @param cursor A cursor passed to {@link #changeCursor(Cursor)}.
+     *  @return The colors, to be passed to {@link #updateBackground(View, String)},
+     *          or null if the cursor has no card type columns. */
+    public String getColors(@NonNull Cursor cursor) {
+        if(column == null) return null;
         curColors.clear();
 
         /* Some types of Action cards do not use the default Action color.
@@ -123,11 +130,22 @@ public class CardColorFactory {
         String val = Utils.join(",", curColors);
         if(action) val = (val.length() == 0) ? ""+_action : _action+","+val;
         if(val.length() == 0) val = ""+_action;
+        return val;
+    }
+
 
+    /** Set the background of a view to some card colors.
+     *  @param view The view to change.
+     *  @param colors Colors from {@link #getColors(Cursor)}. */
+    public void updateBackground(@NonNull View view, String colors) {
+        if(colors == null) {
+            view.setBackgroundResource(android.R.color.transparent);
+            return;
+        }
         if(Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
             //noinspection deprecation
-            view.setBackgroundDrawable(getDrawable(val, (int)(width+0.5f)));
-        } else view.setBackground(getDrawable(val, (int)(width+0.5f)));
+            view.setBackgroundDrawable(getDrawable(colors, (int)(width+0.5f)));
+        } else view.setBackground(getDrawable(colors, (int)(width+0.5f)));
     }
 
 
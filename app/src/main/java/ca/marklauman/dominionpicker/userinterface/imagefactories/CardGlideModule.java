@@ -0,0 +1,80 @@
+package ca.marklauman.dominionpicker.userinterface.imagefactories;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.annotation.GlideModule;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.engine.bitmap_recycle.LruBitmapPool;
+import com.bumptech.glide.load.engine.cache.InternalCacheDiskCacheFactory;
+import com.bumptech.glide.load.engine.cache.LruResourceCache;
+import com.bumptech.glide.load.engine.cache.MemorySizeCalculator;
+import com.bumptech.glide.module.AppGlideModule;
+import com.bumptech.glide.request.RequestOptions;
+
+import java.io.IOException;
+
+import ca.marklauman.dominionpicker.BuildConfig;
+import ca.marklauman.dominionpicker.R;
+
+/** Configures Glide for the images in this app: card pictures and set icons.
+ *  Card pictures are opaque photos, so they are decoded as RGB_565,
+ *  which takes half the memory of the default ARGB_8888.
+ *  Images with transparency are still decoded with an alpha channel.
+ *  The caches are sized to hold the whole catalog of card thumbnails
+ *  instead of a share of the device's memory.
+ *  @author Mark Lauman */
+@GlideModule
+public class CardGlideModule extends AppGlideModule {
+    /** Tag used for logging. */
+    private static final String TAG = "ca.marklauman.dominionpicker.CardGlideModule";
+    /** Folder of the card pictures in the assets. */
+    private static final String CARD_ASSETS = "card_images";
+    /** Number of cards used if the pictures cannot be counted. */
+    private static final int DEFAULT_CARDS = 400;
+    /** Bytes per pixel of an RGB_565 bitmap. */
+    private static final int RGB_565_BYTES = 2;
+    /** Size of the disk cache. Decoded thumbnails are small, so this holds all of them. */
+    private static final int DISK_CACHE_BYTES = 8 * 1024 * 1024;
+
+
+    @Override
+    public void applyOptions(@NonNull Context context, @NonNull GlideBuilder builder) {
+        builder.setDefaultRequestOptions(new RequestOptions().format(DecodeFormat.PREFER_RGB_565));
+
+        /* The memory cache holds the whole catalog of thumbnails, but never more than Glide
+         * would use by default. The pool only recycles the rows scrolled off screen,
+         * so it gets half of that. */
+        int thumb = context.getResources().getDimensionPixelSize(R.dimen.card_thumb_size);
+        long catalog = (long) countCards(context) * thumb * thumb * RGB_565_BYTES;
+        MemorySizeCalculator calculator = new MemorySizeCalculator.Builder(context).build();
+        int memory = (int) Math.min(catalog, calculator.getMemoryCacheSize());
+        int pool = (int) Math.min(catalog / 2, calculator.getBitmapPoolSize());
+        builder.setMemoryCache(new LruResourceCache(memory));
+        builder.setBitmapPool(new LruBitmapPool(pool));
+        builder.setDiskCache(new InternalCacheDiskCacheFactory(context, DISK_CACHE_BYTES));
+        if(BuildConfig.DEBUG)
+            Log.d(TAG, "Memory cache " + (memory / 1024) + " KiB (default "
+                       + (calculator.getMemoryCacheSize() / 1024) + " KiB), bitmap pool "
+                       + (pool / 1024) + " KiB (default "
+                       + (calculator.getBitmapPoolSize() / 1024) + " KiB)");
+    }
+
+
+    /** Count the card pictures in the assets. */
+    private static int countCards(Context context) {
+        try {
+            String[] cards = context.getAssets().list(CARD_ASSETS);
+            if(cards != null && cards.length != 0) return cards.length;
+        } catch(IOException ignored) {}
+        return DEFAULT_CARDS;
+    }
+
+
+    @Override
+    public boolean isManifestParsingEnabled() {
+        return false;
+    }
+}
@@ -0,0 +1,53 @@
+package ca.marklauman.dominionpicker.userinterface.imagefactories;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.support.v4.content.ContextCompat;
+
+import ca.marklauman.dominionpicker.R;
+import ca.marklauman.tools.Utils;
+
+/** The icons of the card sets, loaded once and shared by every screen.
+ *  There are only a few sets, so each icon is loaded the first time any is needed
+ *  and its constant state is kept for as long as the app runs.
+ *  <p>Every call returns a new drawable made from that state. The drawables share
+ *  the decoded image, but each has its own bounds and callback,
+ *  so one can be given to each view. Only use this on the main thread.</p>
+ *  @author Mark Lauman */
+public abstract class SetIcons {
+    /** The state of each set's icon, by set id. Null until first used. */
+    private static Drawable.ConstantState[] icons = null;
+    /** The state of the icon of sets with no icon. */
+    private static Drawable.ConstantState unknown = null;
+
+
+    /** Get the icon of a card set.
+     *  @param context Any context of this app.
+     *  @param set The id of the set.
+     *  @return A new drawable of the set's icon, or of the unknown set icon if it has none. */
+    public static Drawable get(Context context, int set) {
+        if(icons == null) load(context.getApplicationContext());
+        Drawable.ConstantState icon = set < 0 || icons.length <= set ? unknown : icons[set];
+        return icon.newDrawable(context.getResources());
+    }
+
+
+    /** Load every set icon. */
+    private static void load(Context context) {
+        unknown = loadState(context, R.drawable.ic_set_unknown);
+        int[] res = Utils.getResourceArray(context, R.array.card_set_icons);
+        Drawable.ConstantState[] loaded = new Drawable.ConstantState[res.length];
+        for(int set = 0; set < res.length; set++) {
+            Drawable.ConstantState state = res[set] == 0 ? null : loadState(context, res[set]);
+            loaded[set] = state == null ? unknown : state;
+        }
+        icons = loaded;
+    }
+
+
+    /** Load the constant state of a drawable resource (null if it has none). */
+    private static Drawable.ConstantState loadState(Context context, int id) {
+        Drawable icon = ContextCompat.getDrawable(context, id);
+        return icon == null ? null : icon.getConstantState();
+    }
+}
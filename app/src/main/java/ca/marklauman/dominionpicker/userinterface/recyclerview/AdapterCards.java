@@ -2,12 +2,14 @@ package ca.marklauman.dominionpicker.userinterface.recyclerview;
 
 import android.content.Context;
 import android.content.Intent;
-import android.content.res.Resources;
 import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.StaleDataException;
+import android.graphics.drawable.Drawable;
+import android.os.AsyncTask;
 import android.support.annotation.NonNull;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
-import android.text.SpannableStringBuilder;
-import android.text.style.ImageSpan;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -15,9 +17,15 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.ListPreloader;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.integration.recyclerview.RecyclerViewPreloader;
 import com.bumptech.glide.request.RequestOptions;
+import com.bumptech.glide.request.target.DrawableImageViewTarget;
+import com.bumptech.glide.util.FixedPreloadSizeProvider;
 
-import java.util.Locale;
+import java.util.Collections;
+import java.util.List;
 
 import butterknife.BindView;
 import butterknife.ButterKnife;
@@ -25,11 +33,9 @@ import butterknife.OnClick;
 import butterknife.OnLongClick;
 import ca.marklauman.dominionpicker.ActivityCardInfo;
 import ca.marklauman.dominionpicker.R;
-import ca.marklauman.dominionpicker.userinterface.icons.IconDescriber;
-import ca.marklauman.dominionpicker.userinterface.icons.PriceIcon;
 import ca.marklauman.dominionpicker.userinterface.imagefactories.CardColorFactory;
+import ca.marklauman.dominionpicker.userinterface.imagefactories.SetIcons;
 import ca.marklauman.dominionpicker.database.TableCard;
-import ca.marklauman.tools.Utils;
 import ca.marklauman.tools.recyclerview.dragdrop.BasicTouchAdapter;
 import ca.marklauman.tools.recyclerview.dragdrop.TouchCallback;
 
@@ -37,6 +43,9 @@ import ca.marklauman.tools.recyclerview.dragdrop.TouchCallback;
  *  @author Mark Lauman */
 public class AdapterCards extends BasicTouchAdapter<AdapterCards.ViewHolder> {
 
+    /** Number of rows ahead of the screen whose pictures are loaded in advance. */
+    private static final int PRELOAD_ROWS = 10;
+
     /** The columns used by this adapter. Any other columns provided will be ignored. */
     public static final String[] COLS_USED =
            {TableCard._ID, TableCard._NAME, TableCard._SET_NAME, TableCard._TYPE,
@@ -53,38 +62,17 @@ public class AdapterCards extends BasicTouchAdapter<AdapterCards.ViewHolder> {
     private final boolean hasSwipe;
     /** Factory used to set the card color */
     private final CardColorFactory colorFactory;
-    /** Icon used for each expansion */
-    private final int[] set_icons;
-    /** Formatter string used to label the card details button */
-    private final String cardDetails;
-    /** Used to describe the icons for coins, debt tokens and potions. */
-    private final IconDescriber mDescriber;
-
-
-    /** Cursor on display in this adapter. */
-    Cursor mCursor;
-    /** Index of the "_id" column for {@link #mCursor}. */
-    int _id;
-    /** Index of the "name" column for {@link #mCursor}. */
-    private int _name;
-    /** Index of the "set_id" column for {@link #mCursor}. */
-    private int _set_id;
-    /** Index of the "set_name" column for {@link #mCursor}. */
-    private int _set_name;
-    /** Index of the "cost" column for {@link #mCursor}. */
-    private int _cost;
-    /** Index of the "debt" column for {@link #mCursor}. */
-    private int _debt;
-    /** Index of the "potion" column for {@link #mCursor}. */
-    private int _potion;
-    /** Index of the "language" column for {@link #mCursor}. */
-    private int _language;
-    /** Index of the "type" column for {@link #mCursor}. */
-    private int _type;
-    /** Index of the "requires" column for {@link #mCursor}. */
-    private int _requires;
-    /** Index of the landmark card type */
-    private int _type_landmark;
+    /** Builds the rows of this adapter out of its cursor. */
+    private final CardRowFactory rowFactory;
+    /** Loads the pictures of the cards. Only its model changes from one picture to
+     *  the next, so it is made once and reused (main thread only). */
+    private final RequestBuilder<Drawable> images;
+
+
+    /** The rows on display in this adapter. */
+    CardRow[] mRows = new CardRow[0];
+    /** The task building the rows of the last cursor, if they are not ready yet. */
+    private RowTask mRowTask = null;
 
 
     /** Listener to be notified if a card is clicked. */
@@ -112,11 +100,25 @@ public class AdapterCards extends BasicTouchAdapter<AdapterCards.ViewHolder> {
         hasStableIds();
         context = view.getContext();
         hasSwipe = dismiss;
-        Resources res   = view.getResources();
         colorFactory = new CardColorFactory(context);
-        set_icons = Utils.getResourceArray(context, R.array.card_set_icons);
-        cardDetails = res.getString(R.string.card_details_button);
-        mDescriber = new IconDescriber(context);
+        rowFactory = new CardRowFactory(context, new CardColorFactory(context));
+        images = Glide.with(context)
+                      .asDrawable()
+                      .apply(RequestOptions.fitCenterTransform());
+
+        // Load the pictures of the next rows before they are scrolled on screen
+        int thumbSize = context.getResources().getDimensionPixelSize(R.dimen.card_thumb_size);
+        view.addOnScrollListener(new RecyclerViewPreloader<>(
+                Glide.with(context), new ImagePreloader(),
+                new FixedPreloadSizeProvider<String>(thumbSize, thumbSize), PRELOAD_ROWS));
+    }
+
+
+    /** Start loading the picture of a card. This changes the model of {@link #images},
+     *  so the request must be started before the next picture is loaded.
+     *  Rows and the preloader use the same request, so preloaded pictures are used. */
+    private RequestBuilder<Drawable> loadImage(String image) {
+        return images.load(image);
     }
 
 
@@ -128,21 +130,43 @@ public class AdapterCards extends BasicTouchAdapter<AdapterCards.ViewHolder> {
 
     /** Change the cursor on display. This forces a rebind of all views. */
     public void changeCursor(Cursor cursor) {
-        mCursor = cursor;
-        if(cursor == null) return;
-        colorFactory.changeCursor(cursor);
-        _id = cursor.getColumnIndex(TableCard._ID);
-        _name = cursor.getColumnIndex(TableCard._NAME);
-        _set_id = cursor.getColumnIndex(TableCard._SET_ID);
-        _set_name = cursor.getColumnIndex(TableCard._SET_NAME);
-        _cost = cursor.getColumnIndex(TableCard._COST);
-        _debt = cursor.getColumnIndex(TableCard._DEBT);
-        _potion = cursor.getColumnIndex(TableCard._POT);
-        _language = cursor.getColumnIndex(TableCard._LANG);
-        _type = cursor.getColumnIndex(TableCard._TYPE);
-        _requires = cursor.getColumnIndex(TableCard._REQ);
-        _type_landmark = cursor.getColumnIndex(TableCard._TYPE_LANDMARK);
-        notifyDataSetChanged();
+        changeCursor(cursor, null);
+    }
+
+
+    /** Change the cursor on display. The rows of the cursor are built in the background,
+     *  and the old rows stay on display until they are ready.
+     *  The rows are read while holding the lock of the cursor's innermost wrapped cursor,
+     *  so views over the same rows (like those of a
+     *  {@link ca.marklauman.dominionpicker.database.FilterCursor}) are read one at a time.
+     *  Anything else that moves the cursor in the meantime must hold the same lock.
+     *  @param cursor The new cursor.
+     *  @param changes The rows that changed between the old cursor and the new one.
+     *                 If null, all views are rebound. */
+    public void changeCursor(Cursor cursor, DiffUtil.DiffResult changes) {
+        if(mRowTask != null) {
+            // The rows of the last cursor were never shown, so the changes do not apply
+            mRowTask.cancel(false);
+            mRowTask = null;
+            changes = null;
+        }
+        if(cursor == null) {
+            changeRows(new CardRow[0], null);
+            return;
+        }
+        mRowTask = new RowTask(cursor, changes);
+        mRowTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+
+    /** Display new rows. Called on the main thread once the rows of a cursor are ready.
+     *  @param rows The new rows.
+     *  @param changes The rows that changed since the old rows.
+     *                 If null, all views are rebound. */
+    void changeRows(CardRow[] rows, DiffUtil.DiffResult changes) {
+        mRows = rows;
+        if(changes == null) notifyDataSetChanged();
+        else changes.dispatchUpdatesTo(this);
     }
 
 
@@ -155,56 +179,20 @@ public class AdapterCards extends BasicTouchAdapter<AdapterCards.ViewHolder> {
 
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        mCursor.moveToPosition(position);
-
-        final long id = mCursor.getLong(_id);
-        final String name = mCursor.getString(_name);
-
-        // Card color, image and name
-        colorFactory.updateBackground(holder.color, mCursor);
-        Glide.with(context)
-             .load("file:///android_asset/card_images/"
-                   + String.format(Locale.US, "%03d", id) + ".jpg")
-             .into(holder.image);
-        holder.details.setContentDescription(String.format(Locale.US, cardDetails, name));
-        holder.name.setText(name);
-
-        // The set icon and name
-        int set_icon = R.drawable.ic_set_unknown;
-        try {
-            set_icon = set_icons[mCursor.getInt(_set_id)];
-        } catch(ArrayIndexOutOfBoundsException ignored) {}
-        Glide.with(context)
-             .load(set_icon)
-             .apply(RequestOptions.noTransformation())
-             .into(holder.set);
-        holder.set.setContentDescription(mCursor.getString(_set_name));
-
-        // The card type and cost
-        SpannableStringBuilder span = new SpannableStringBuilder(mCursor.getString(_type));
-        holder.price.setValue(mCursor.getString(_cost), mCursor.getInt(_debt),
-                              mCursor.getInt(_potion), mCursor.getInt(_type_landmark));
-        String price = holder.price.getDescription(mCursor.getString(_language));
-        span.insert(0, price+" ");
-        span.setSpan(new ImageSpan(holder.price, ImageSpan.ALIGN_BASELINE), 0, price.length(), 0);
-        holder.type.setText(span);
-
-        // The card requirements
-        String req = mCursor.getString(_requires);
-        holder.requires.setText(req);
-        holder.requires.setVisibility( (req == null || req.equals("")) ? View.GONE : View.VISIBLE);
+        CardRow row = mRows[position];
+        row.bindTo(holder, holder.shown);
+        holder.shown = row;
     }
 
 
     @Override
     public int getItemCount() {
-        return mCursor == null ? 0 : mCursor.getCount();
+        return mRows.length;
     }
 
     @Override
     public long getItemId(int position) {
-        mCursor.moveToPosition(position);
-        return mCursor.getLong(_id);
+        return mRows[position].id;
     }
 
     @Override
@@ -217,8 +205,7 @@ public class AdapterCards extends BasicTouchAdapter<AdapterCards.ViewHolder> {
     /** Get the display name of a card
      *  @param position The position of the card in this adapter. */
     public String getName(int position) {
-        mCursor.moveToPosition(position);
-        return mCursor.getString(_name);
+        return mRows[position].name;
     }
 
 
@@ -230,7 +217,65 @@ public class AdapterCards extends BasicTouchAdapter<AdapterCards.ViewHolder> {
     }
 
 
-    public class ViewHolder extends RecyclerView.ViewHolder {
+    /** Tells the preloader which pictures are displayed at each position. */
+    private class ImagePreloader implements ListPreloader.PreloadModelProvider<String> {
+        @Override @NonNull
+        public List<String> getPreloadItems(int position) {
+            if(position < 0 || mRows.length <= position) return Collections.emptyList();
+            return Collections.singletonList(mRows[position].image);
+        }
+
+        @Override
+        public RequestBuilder<Drawable> getPreloadRequestBuilder(@NonNull String image) {
+            return loadImage(image);
+        }
+    }
+
+
+    /** Builds the rows of a cursor in the background. */
+    private class RowTask extends AsyncTask<Void, Void, CardRow[]> {
+        /** The cursor to build rows for. */
+        private final Cursor cursor;
+        /** The rows that changed since the rows on display. */
+        private final DiffUtil.DiffResult changes;
+
+        RowTask(Cursor cursor, DiffUtil.DiffResult changes) {
+            this.cursor = cursor;
+            this.changes = changes;
+        }
+
+        @Override
+        protected CardRow[] doInBackground(Void... params) {
+            // Other views of the same rows move the same cursor underneath
+            Cursor rows = cursor;
+            while(rows instanceof CursorWrapper)
+                rows = ((CursorWrapper) rows).getWrappedCursor();
+            // The factory builds one cursor's rows at a time
+            synchronized(rowFactory) {
+                synchronized(rows) {
+                    // A newer cursor may have replaced this one while it waited
+                    if(isCancelled()) return null;
+                    try {
+                        return rowFactory.read(cursor);
+                    } catch(StaleDataException | IllegalStateException e) {
+                        // The cursor was closed because it was replaced. Its rows are not needed.
+                        if(cursor.isClosed()) return null;
+                        throw e;
+                    }
+                }
+            }
+        }
+
+        @Override
+        protected void onPostExecute(CardRow[] rows) {
+            if(mRowTask != this || rows == null) return;
+            mRowTask = null;
+            changeRows(rows, changes);
+        }
+    }
+
+
+    public class ViewHolder extends RecyclerView.ViewHolder implements CardRow.Target {
         @BindView(android.R.id.background) public View background;
         @BindView(R.id.card_color)         public View color;
         @BindView(R.id.card_image)         public ImageView image;
@@ -240,28 +285,55 @@ public class AdapterCards extends BasicTouchAdapter<AdapterCards.ViewHolder> {
         @BindView(R.id.card_extra)         public TextView extra;
         @BindView(R.id.card_type)          public TextView type;
         @BindView(R.id.card_requires)      TextView requires;
-        /** Icon used to display the price of this card */
-        private final PriceIcon price;
+        /** Receives the picture of the card, made once for this row's image. */
+        private final DrawableImageViewTarget imageTarget;
+        /** The row on display in these views, or null if they have not been bound. */
+        CardRow shown = null;
 
         public ViewHolder(View itemView) {
             super(itemView);
             ButterKnife.bind(this, itemView);
-            price = new PriceIcon(context, mDescriber);
-            price.setHeight((int)(-1.0 * type.getPaint().ascent() + 0.5f));
+            imageTarget = new DrawableImageViewTarget(image);
+            rowFactory.setPriceHeight((int)(-1.0 * type.getPaint().ascent() + 0.5f));
+        }
+
+        @Override
+        public void showCard(long id, String name, String image, String details) {
+            loadImage(image).into(imageTarget);
+            this.details.setContentDescription(details);
+            this.name.setText(name);
+        }
+
+        @Override
+        public void showSet(int set, String name) {
+            this.set.setImageDrawable(SetIcons.get(context, set));
+            this.set.setContentDescription(name);
+        }
+
+        @Override
+        public void showType(CharSequence type, String requires) {
+            this.type.setText(type);
+            this.requires.setText(requires);
+            this.requires.setVisibility(requires == null ? View.GONE : View.VISIBLE);
+        }
+
+        @Override
+        public void showColors(String colors) {
+            colorFactory.updateBackground(color, colors);
         }
 
         /** View the details of this card. Triggered when the card's image is clicked. */
         @OnClick(R.id.card_details)
         void launchDetails() {
-            mCursor.moveToPosition(getAdapterPosition());
-            AdapterCards.launchDetails(context, mCursor.getLong(_id));
+            final int position = getAdapterPosition();
+            if(position == RecyclerView.NO_POSITION) return;
+            AdapterCards.launchDetails(context, mRows[position].id);
         }
 
         private void notifyClick(boolean longClick) {
-            if(mListener == null) return;
             final int position = getAdapterPosition();
-            mCursor.moveToPosition(position);
-            mListener.onItemClick(this, position, mCursor.getLong(_id), longClick);
+            if(mListener == null || position == RecyclerView.NO_POSITION) return;
+            mListener.onItemClick(this, position, mRows[position].id, longClick);
         }
 
         @OnClick(R.id.click_area)
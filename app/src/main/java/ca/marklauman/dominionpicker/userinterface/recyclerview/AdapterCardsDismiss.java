@@ -45,7 +45,7 @@ public class AdapterCardsDismiss extends AdapterCards
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
         super.onBindViewHolder(holder, position);
-        if(mBane == mCursor.getLong(_id)) {
+        if(mBane == mRows[position].id) {
             holder.background.setBackgroundResource(R.color.type_curse);
             holder.extra.setVisibility(View.VISIBLE);
         } else {
@@ -57,15 +57,15 @@ public class AdapterCardsDismiss extends AdapterCards
 
     @Override
     public void onItemClick(ViewHolder holder, int position, long id, boolean longClick) {
-        if(mListener != null && mCursor.moveToPosition(position))
+        if(mListener != null && position < mRows.length)
             mListener.onItemClick(holder, position, id, longClick);
     }
 
 
     @Override
     public void onDismiss(int position) {
-        if(mListener != null && mCursor.moveToPosition(position))
-            mListener.onDismiss(position, mCursor.getLong(_id));
+        if(mListener != null && 0 <= position && position < mRows.length)
+            mListener.onDismiss(position, mRows[position].id);
     }
 
 
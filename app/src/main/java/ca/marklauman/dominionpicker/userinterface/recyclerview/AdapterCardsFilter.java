@@ -1,66 +1,84 @@
 package ca.marklauman.dominionpicker.userinterface.recyclerview;
 
 import android.support.annotation.NonNull;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.view.View;
 import android.view.ViewGroup;
 
-import java.util.HashSet;
+import java.util.BitSet;
+import java.util.List;
 
 import ca.marklauman.dominionpicker.R;
-import ca.marklauman.tools.Utils;
+import ca.marklauman.dominionpicker.settings.CardBits;
 
 /** Adapter designed to mark cards as filtered or required.
  *  Short press selects/deselects. Long press requires.
+ *  Selections are kept as bitsets indexed by card id, so checking a card
+ *  does not allocate and changing the whole list is done a word at a time.
+ *  The ids of the cards on display are captured when the rows change,
+ *  along with the number of them that are deselected, so toggling all cards
+ *  never walks the cursor and only rebinds the rows that changed.
  *  @author Mark Lauman */
 public class AdapterCardsFilter extends AdapterCards
                                 implements AdapterCards.Listener {
+    /** Payload of a change that only affects the selection status of a row. */
+    private static final Object SELECTION = new Object();
 
     /** Cards that are deselected and will be filtered out. */
-    private final HashSet<Long> mDeselected;
+    private final BitSet mDeselected;
     /** Cards that are hard selected and are considered required. */
-    private final HashSet<Long> mRequired;
+    private final BitSet mRequired;
+    /** Cards in the current cursor. */
+    private final BitSet mVisible = new BitSet();
+    /** Id of the card at each position of the current cursor. */
+    private long[] mVisibleIds = new long[0];
+    /** Number of cards in the current cursor that are deselected. */
+    private int mDeselectedVisible = 0;
 
 
     /** Basic constructor.
      *  @param view The ListView this adapter oversees.
-     *  @param filtered The filtered card ids, separated by commas
-     *                  (such as what would come out of {@link #getFilter()}).
-     *  @param required The required card ids, separated by commas
-     *                  (such as what would come out of {@link #getRequired()}). */
-    public AdapterCardsFilter(RecyclerView view, String filtered, String required){
+     *  @param filtered The filtered card ids.
+     *  @param required The required card ids. */
+    public AdapterCardsFilter(RecyclerView view, CardBits filtered, CardBits required){
         super(view);
         setListener(this);
-        mDeselected = new HashSet<>();
-        mRequired = new HashSet<>();
-        readString(mDeselected, filtered);
-        readString(mRequired, required);
+        mDeselected = filtered.toBitSet();
+        mRequired = required.toBitSet();
     }
 
 
-    /** Read a string of long values into a HashSet.
-     *  @param destination Where the values in the string will be stored.
-     *  @param toRead The string to read into the HashSet.
-     *                Formatted as comma separated long values. */
-    private static void readString(HashSet<Long> destination, String toRead) {
-        if(toRead == null || toRead.equals("")) return;
-        final String[] split = toRead.split(",");
-        for(String val : split) {
-            try{ destination.add(Long.parseLong(val));
-            } catch(NumberFormatException ignored) {}
-        }
+    /** Get the filtered cards */
+    public CardBits getFilter() {
+        return CardBits.of(mDeselected);
+    }
+
+
+    /** Get the required cards */
+    public CardBits getRequired() {
+        return CardBits.of(mRequired);
     }
 
 
-    /** Get a comma separated list of the filtered cards */
-    public String getFilter() {
-        return Utils.join(",", mDeselected);
+    @Override
+    void changeRows(CardRow[] rows, DiffUtil.DiffResult changes) {
+        mVisible.clear();
+        mDeselectedVisible = 0;
+        mVisibleIds = new long[rows.length];
+        for(int pos = 0; pos < rows.length; pos++) {
+            long id = rows[pos].id;
+            mVisibleIds[pos] = id;
+            mVisible.set((int) id);
+            if(mDeselected.get((int) id)) mDeselectedVisible++;
+        }
+        super.changeRows(rows, changes);
     }
 
 
-    /** Get a comma separated list of the required cards */
-    public String getRequired() {
-        return Utils.join(",", mRequired);
+    @Override
+    public long getItemId(int position) {
+        return mVisibleIds[position];
     }
 
 
@@ -70,17 +88,18 @@ public class AdapterCardsFilter extends AdapterCards
      *  @param longClick If the click was long or not. */
     @Override
     public void onItemClick(ViewHolder holder, int position, long id, boolean longClick) {
+        final int card = (int) id;
+        if(mDeselected.get(card)) mDeselectedVisible--;
         // If the item was required, it changes to selected regardless of click length
-        if(!mRequired.remove(id)) {
-            // A long click when not required, makes an item required.
-            if(longClick) {
-                mDeselected.remove(id);
-                mRequired.add(id);
-            // A short click when not required toggles between selected and deselected
-            } else if(!mDeselected.remove(id))
-                mDeselected.add(id);
-        }
-        notifyItemRangeChanged(position, 1);
+        if(mRequired.get(card)) mRequired.clear(card);
+        // A long click when not required, makes an item required.
+        else if(longClick) {
+            mDeselected.clear(card);
+            mRequired.set(card);
+        // A short click when not required toggles between selected and deselected
+        } else mDeselected.flip(card);
+        if(mDeselected.get(card)) mDeselectedVisible++;
+        notifyItemRangeChanged(position, 1, SELECTION);
     }
 
 
@@ -88,48 +107,46 @@ public class AdapterCardsFilter extends AdapterCards
      *  If no cards are deselected, all cards are deselected (including required ones).
      *  Cards that aren't in the cursor will not be affected. */
     public void toggleAll() {
-        if(allCardsSelected()) deselectAll();
+        if(mDeselectedVisible == 0) deselectAll();
         else selectAll();
     }
 
 
-    /** Check that no cards from the current list are deselected. */
-    private boolean allCardsSelected() {
-        // If nothing is deselected, then we're good
-        if(mDeselected.size() == 0) return true;
-        /* If cards are deselected, they may not be in the list.
-         * We need to check that the deselected cards are in the list. */
-        mCursor.moveToPosition(-1);
-        while(mCursor.moveToNext()) {
-            if(mDeselected.contains(mCursor.getLong(_id)))
-                return false;
-        }
-        // None of the items in the cursor was in mDeselected
-        return true;
-    }
-
-
     /** Deselect all cards in the list. Required cards become deselected as well.
      *  Cards not in the list are unchanged. */
     private void deselectAll() {
-        long id;
-        mCursor.moveToPosition(-1);
-        while(mCursor.moveToNext()) {
-            id = mCursor.getLong(_id);
-            mRequired.remove(id);
-            mDeselected.add(id);
-        }
-        notifyDataSetChanged();
+        notifySelectionChanged(false);
+        mRequired.andNot(mVisible);
+        mDeselected.or(mVisible);
+        mDeselectedVisible = mVisibleIds.length;
     }
 
 
     /** Select all cards in the list. Required cards are unchanged.
      *  Cards not in the list are unchanged. */
     private void selectAll() {
-        mCursor.moveToPosition(-1);
-        while(mCursor.moveToNext())
-            mDeselected.remove(mCursor.getLong(_id));
-        notifyDataSetChanged();
+        notifySelectionChanged(true);
+        mDeselected.andNot(mVisible);
+        mDeselectedVisible = 0;
+    }
+
+
+    /** Notify the views of the rows that change when all cards are selected or deselected.
+     *  Consecutive rows are reported as one range.
+     *  @param deselected The rows that change: the deselected rows if true,
+     *                    or the rows that are not deselected if false. */
+    private void notifySelectionChanged(boolean deselected) {
+        int start = -1;
+        for(int pos = 0; pos < mVisibleIds.length; pos++) {
+            boolean changed = mDeselected.get((int) mVisibleIds[pos]) == deselected;
+            if(changed && start < 0) start = pos;
+            else if(!changed && 0 <= start) {
+                notifyItemRangeChanged(start, pos - start, SELECTION);
+                start = -1;
+            }
+        }
+        if(0 <= start)
+            notifyItemRangeChanged(start, mVisibleIds.length - start, SELECTION);
     }
 
 
@@ -141,20 +158,34 @@ public class AdapterCardsFilter extends AdapterCards
     }
 
 
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position,
+                                 @NonNull List<Object> payloads) {
+        // Selection changes leave the rest of the row (and its images) alone
+        if(payloads.isEmpty())
+            super.onBindViewHolder(holder, position, payloads);
+        else bindSelection(holder, position);
+    }
+
+
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
         super.onBindViewHolder(holder, position);
+        bindSelection(holder, position);
+    }
+
 
-        // Determine and apply the selection status to the view
-        final long id = mCursor.getLong(_id);
+    /** Apply the selection status of a card to its view. */
+    private void bindSelection(ViewHolder holder, int position) {
+        final int id = (int) mVisibleIds[position];
         int background = R.color.list_item_sel;
         int visibility = View.GONE;
-        if(mDeselected.contains(id)) background = R.color.background;
-        else if(mRequired.contains(id)) {
+        if(mDeselected.get(id)) background = R.color.background;
+        else if(mRequired.get(id)) {
             background = R.color.list_item_sel_hard;
             visibility = View.VISIBLE;
         }
         holder.background.setBackgroundResource(background);
         holder.extra.setVisibility(visibility);
     }
-}
\ No newline at end of file
+}
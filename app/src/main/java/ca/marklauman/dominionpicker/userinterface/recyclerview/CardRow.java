@@ -0,0 +1,88 @@
+package ca.marklauman.dominionpicker.userinterface.recyclerview;
+
+/** Everything displayed in one row of an {@link AdapterCards}, worked out in advance.
+ *  Rows are built in the background when the cursor changes,
+ *  so binding a row only hands these fields to the row's views.
+ *  When a view is bound again, only the fields that differ from the row it showed
+ *  are handed over, so rebinding a row costs nothing.
+ *  A row never changes once it is made.
+ *  @author Mark Lauman */
+public final class CardRow {
+    /** The id of the card. */
+    public final long id;
+    /** The display name of the card. */
+    public final String name;
+    /** Location of the card's picture. */
+    public final String image;
+    /** Content description of the card details button. */
+    public final String details;
+    /** The id of the card's set. */
+    public final int set;
+    /** Display name of the card's set. */
+    public final String setName;
+    /** The price and type of the card, with the price drawn as an icon. */
+    public final CharSequence type;
+    /** The cards this card requires, or null if it requires none. */
+    public final String requires;
+    /** The colors of the card's types, as understood by
+     *  {@link ca.marklauman.dominionpicker.userinterface.imagefactories.CardColorFactory}. */
+    public final String colors;
+
+
+    /** Receives the fields of a row when it is bound. */
+    public interface Target {
+        /** Display the name and picture of a card. */
+        void showCard(long id, String name, String image, String details);
+        /** Display the set of a card. */
+        void showSet(int set, String name);
+        /** Display the type, price and requirements of a card.
+         *  @param requires The cards required, or null for none. */
+        void showType(CharSequence type, String requires);
+        /** Display the colors of a card's types. */
+        void showColors(String colors);
+    }
+
+
+    public CardRow(long id, String name, String image, String details, int set,
+                   String setName, CharSequence type, String requires, String colors) {
+        this.id = id;
+        this.name = name;
+        this.image = image;
+        this.details = details;
+        this.set = set;
+        this.setName = setName;
+        this.type = type;
+        this.requires = requires == null || requires.length() == 0 ? null : requires;
+        this.colors = colors;
+    }
+
+
+    /** Hand the fields of this row to its views. */
+    public void bindTo(Target target) {
+        bindTo(target, null);
+    }
+
+
+    /** Hand the fields of this row to views that are showing another row.
+     *  @param target The views of the row.
+     *  @param shown The row the views are showing, or null if they show nothing yet.
+     *               Only the fields that differ from it are handed over. */
+    public void bindTo(Target target, CardRow shown) {
+        if(shown == this) return;
+        if(shown == null || !same(colors, shown.colors))
+            target.showColors(colors);
+        if(shown == null || id != shown.id || !same(name, shown.name)
+           || !same(image, shown.image) || !same(details, shown.details))
+            target.showCard(id, name, image, details);
+        if(shown == null || set != shown.set || !same(setName, shown.setName))
+            target.showSet(set, setName);
+        if(shown == null || !same(type, shown.type) || !same(requires, shown.requires))
+            target.showType(type, requires);
+    }
+
+
+    /** True if two fields are equal (or both null). */
+    private static boolean same(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
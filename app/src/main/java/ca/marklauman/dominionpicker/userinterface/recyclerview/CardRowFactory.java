@@ -0,0 +1,135 @@
+package ca.marklauman.dominionpicker.userinterface.recyclerview;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.text.SpannableStringBuilder;
+import android.text.SpannedString;
+import android.text.style.ImageSpan;
+
+import java.util.HashMap;
+import java.util.Locale;
+
+import ca.marklauman.dominionpicker.BuildConfig;
+import ca.marklauman.dominionpicker.R;
+import ca.marklauman.dominionpicker.database.TableCard;
+import ca.marklauman.dominionpicker.userinterface.icons.IconDescriber;
+import ca.marklauman.dominionpicker.userinterface.icons.PriceIcon;
+import ca.marklauman.dominionpicker.userinterface.imagefactories.CardColorFactory;
+
+/** Builds the {@link CardRow}s of an {@link AdapterCards} out of a cursor.
+ *  Rows are meant to be built in the background, one cursor at a time.
+ *  @author Mark Lauman */
+class CardRowFactory {
+    /** Folder holding the card pictures that best fit a row. */
+    private final String imageDir;
+    /** Context used to make price icons. */
+    private final Context context;
+    /** Factory used to work out the card colors. */
+    private final CardColorFactory colorFactory;
+    /** Formatter string used to label the card details button */
+    private final String cardDetails;
+    /** Used to describe the icons for coins, debt tokens and potions. */
+    private final IconDescriber describer;
+
+    /** One icon for each price seen so far. Rows with the same price share an icon.
+     *  Also guards {@link #priceHeight}. */
+    private final HashMap<String, PriceIcon> prices = new HashMap<>();
+    /** Height of the price icons, or 0 if it is not known yet. */
+    private int priceHeight = 0;
+
+
+    /** @param context Context of the RecyclerView the rows are displayed in.
+     *  @param colorFactory Factory used to work out the card colors. Rows must be
+     *                      built on one thread at a time, as this factory is shared. */
+    CardRowFactory(Context context, CardColorFactory colorFactory) {
+        this.context = context.getApplicationContext();
+        this.colorFactory = colorFactory;
+        cardDetails = context.getString(R.string.card_details_button);
+        describer = new IconDescriber(context);
+
+        // Use the smallest thumbnails made at build time that fill a row
+        int thumbSize = context.getResources().getDimensionPixelSize(R.dimen.card_thumb_size);
+        String dir = "file:///android_asset/card_images/";
+        for(int size : BuildConfig.CARD_THUMB_SIZES) {
+            if(thumbSize <= size) {
+                dir = "file:///android_asset/card_thumbs/" + size + "/";
+                break;
+            }
+        }
+        imageDir = dir;
+    }
+
+
+    /** Set the height of the price icons. Called by each row's view once it knows
+     *  the size of its text. Price icons made before this are resized. */
+    void setPriceHeight(int height) {
+        synchronized(prices) {
+            if(height == priceHeight) return;
+            priceHeight = height;
+            // The first call sizes the parts of each price, the second sizes the price around them
+            for(PriceIcon price : prices.values()) {
+                price.setHeight(height);
+                price.setHeight(height);
+            }
+        }
+    }
+
+
+    /** Get the shared icon of a price. */
+    private PriceIcon price(String coins, int debt, int potion, int landmark) {
+        String key = coins + "/" + debt + "/" + potion + "/" + landmark;
+        synchronized(prices) {
+            PriceIcon price = prices.get(key);
+            if(price != null) return price;
+            price = new PriceIcon(context, describer);
+            price.setHeight(priceHeight);
+            price.setValue(coins, debt, potion, landmark);
+            prices.put(key, price);
+            return price;
+        }
+    }
+
+
+    /** Build a row for every card in a cursor.
+     *  This moves the cursor, so nothing else may use it until this is done.
+     *  @param cursor Cards with the columns in {@link AdapterCards#COLS_USED}.
+     *  @return The row of each card, in the same order as the cursor. */
+    CardRow[] read(Cursor cursor) {
+        CardRow[] rows = new CardRow[cursor.getCount()];
+        colorFactory.changeCursor(cursor);
+        int _id = cursor.getColumnIndex(TableCard._ID);
+        int _name = cursor.getColumnIndex(TableCard._NAME);
+        int _set_id = cursor.getColumnIndex(TableCard._SET_ID);
+        int _set_name = cursor.getColumnIndex(TableCard._SET_NAME);
+        int _cost = cursor.getColumnIndex(TableCard._COST);
+        int _debt = cursor.getColumnIndex(TableCard._DEBT);
+        int _potion = cursor.getColumnIndex(TableCard._POT);
+        int _language = cursor.getColumnIndex(TableCard._LANG);
+        int _type = cursor.getColumnIndex(TableCard._TYPE);
+        int _requires = cursor.getColumnIndex(TableCard._REQ);
+        int _type_landmark = cursor.getColumnIndex(TableCard._TYPE_LANDMARK);
+
+        cursor.moveToPosition(-1);
+        while(cursor.moveToNext()) {
+            final long id = cursor.getLong(_id);
+            final String name = cursor.getString(_name);
+
+            // The card type and cost
+            PriceIcon icon = price(cursor.getString(_cost), cursor.getInt(_debt),
+                                   cursor.getInt(_potion), cursor.getInt(_type_landmark));
+            String price = icon.getDescription(cursor.getString(_language));
+            SpannableStringBuilder span = new SpannableStringBuilder(cursor.getString(_type));
+            span.insert(0, price+" ");
+            span.setSpan(new ImageSpan(icon, ImageSpan.ALIGN_BASELINE), 0, price.length(), 0);
+
+            rows[cursor.getPosition()]
+                    = new CardRow(id, name,
+                                  imageDir + String.format(Locale.US, "%03d", id) + ".jpg",
+                                  String.format(Locale.US, cardDetails, name),
+                                  cursor.getInt(_set_id), cursor.getString(_set_name),
+                                  new SpannedString(span), cursor.getString(_requires),
+                                  colorFactory.getColors(cursor));
+        }
+        return rows;
+    }
+}
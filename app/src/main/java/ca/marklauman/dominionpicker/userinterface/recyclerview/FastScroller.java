@@ -0,0 +1,178 @@
+package ca.marklauman.dominionpicker.userinterface.recyclerview;
+
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.support.annotation.NonNull;
+import android.support.v4.content.ContextCompat;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.MotionEvent;
+
+import ca.marklauman.dominionpicker.R;
+
+/** A fast-scroll thumb for a list with sections. Dragging the thumb jumps straight
+ *  to the section under it and shows that section's label beside it.
+ *  <p>The thumb is drawn over the list and takes the touches at the list's right edge,
+ *  so it needs no view of its own. Finding the section under the thumb is a binary
+ *  search of the {@link SectionIndex}, and the list only scrolls when that section
+ *  changes, so dragging does not allocate anything or lay out the list every frame.</p>
+ *  <p>The thumb is hidden if the list has fewer than 2 sections or does not scroll.</p>
+ *  @author Mark Lauman */
+public class FastScroller extends RecyclerView.ItemDecoration
+                          implements RecyclerView.OnItemTouchListener {
+    /** The list this scrolls. */
+    private final RecyclerView list;
+    /** Paint of the thumb and the label bubble. */
+    private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    /** Paint of the label text. */
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    /** Bounds of the shape being drawn. Reused for every shape. */
+    private final RectF rect = new RectF();
+    /** Width of the thumb. */
+    private final int thumbWidth;
+    /** Height of the thumb. */
+    private final int thumbHeight;
+    /** Width of the strip at the right edge of the list that grabs the thumb. */
+    private final int touchWidth;
+    /** Smallest size of the label bubble. */
+    private final int bubbleSize;
+
+    /** The sections of the list. */
+    private SectionIndex sections = SectionIndex.EMPTY;
+    /** True while the thumb is being dragged. */
+    private boolean dragging = false;
+    /** Where the thumb is held while it is dragged. */
+    private float dragY = 0f;
+    /** The section the thumb was last dragged to, or -1 if it is not being dragged. */
+    private int section = -1;
+
+
+    /** Add a fast-scroll thumb to a list.
+     *  @param list The list to scroll. */
+    public FastScroller(RecyclerView list) {
+        this.list = list;
+        Resources res = list.getResources();
+        thumbWidth = res.getDimensionPixelSize(R.dimen.fast_scroll_thumb_width);
+        thumbHeight = res.getDimensionPixelSize(R.dimen.fast_scroll_thumb_height);
+        touchWidth = res.getDimensionPixelSize(R.dimen.fast_scroll_touch_width);
+        bubbleSize = res.getDimensionPixelSize(R.dimen.fast_scroll_bubble_size);
+        paint.setColor(ContextCompat.getColor(list.getContext(), R.color.accent));
+        textPaint.setColor(Color.WHITE);
+        textPaint.setTextAlign(Paint.Align.CENTER);
+        textPaint.setTextSize(res.getDimension(R.dimen.fast_scroll_text_size));
+        list.addItemDecoration(this);
+        list.addOnItemTouchListener(this);
+    }
+
+
+    /** Set the sections of the list. Call this whenever the rows of the list change.
+     *  @param sections The sections of the new rows. */
+    public void setSections(SectionIndex sections) {
+        this.sections = sections == null ? SectionIndex.EMPTY : sections;
+        dragging = false;
+        section = -1;
+        list.invalidate();
+    }
+
+
+    /** True if the thumb is shown. */
+    private boolean isShown() {
+        return 1 < sections.size()
+               && list.computeVerticalScrollExtent() < list.computeVerticalScrollRange();
+    }
+
+
+    /** The top of the thumb, from where the list is scrolled (or where it is held). */
+    private float thumbTop() {
+        float track = list.getHeight() - thumbHeight;
+        if(dragging) return Math.max(0f, Math.min(track, dragY - thumbHeight / 2f));
+        int scrollable = list.computeVerticalScrollRange() - list.computeVerticalScrollExtent();
+        if(scrollable <= 0) return 0f;
+        return track * list.computeVerticalScrollOffset() / scrollable;
+    }
+
+
+    @Override
+    public void onDrawOver(@NonNull Canvas c, @NonNull RecyclerView parent,
+                           @NonNull RecyclerView.State state) {
+        if(!isShown()) return;
+        float right = parent.getWidth();
+        float top = thumbTop();
+        float radius = thumbWidth / 2f;
+        rect.set(right - thumbWidth, top, right, top + thumbHeight);
+        c.drawRoundRect(rect, radius, radius, paint);
+
+        // The label bubble, beside the thumb while it is dragged
+        if(section < 0) return;
+        String label = sections.label(section);
+        if(label == null || label.length() == 0) return;
+        float width = Math.max(bubbleSize, textPaint.measureText(label) + bubbleSize / 2f);
+        float centerY = Math.max(bubbleSize / 2f,
+                                 Math.min(parent.getHeight() - bubbleSize / 2f,
+                                          top + thumbHeight / 2f));
+        float bubbleRight = right - touchWidth;
+        radius = bubbleSize / 2f;
+        rect.set(bubbleRight - width, centerY - radius, bubbleRight, centerY + radius);
+        c.drawRoundRect(rect, radius, radius, paint);
+        float baseline = centerY - (textPaint.ascent() + textPaint.descent()) / 2f;
+        c.drawText(label, rect.centerX(), baseline, textPaint);
+    }
+
+
+    @Override
+    public boolean onInterceptTouchEvent(@NonNull RecyclerView rv, @NonNull MotionEvent e) {
+        if(e.getActionMasked() != MotionEvent.ACTION_DOWN
+           || e.getX() < rv.getWidth() - touchWidth || !isShown())
+            return false;
+        dragging = true;
+        rv.stopScroll();
+        dragTo(e.getY());
+        return true;
+    }
+
+
+    @Override
+    public void onTouchEvent(@NonNull RecyclerView rv, @NonNull MotionEvent e) {
+        switch(e.getActionMasked()) {
+            case MotionEvent.ACTION_MOVE:
+                dragTo(e.getY());
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                dragging = false;
+                section = -1;
+                rv.invalidate();
+                break;
+        }
+    }
+
+
+    @Override
+    public void onRequestDisallowInterceptTouchEvent(boolean disallowIntercept) {}
+
+
+    /** Move the thumb to a point on the list, and scroll to the section there. */
+    private void dragTo(float y) {
+        dragY = y;
+        RecyclerView.Adapter adapter = list.getAdapter();
+        int count = adapter == null ? 0 : adapter.getItemCount();
+        if(count == 0) return;
+        float track = list.getHeight() - thumbHeight;
+        float fraction = track <= 0 ? 0f : (y - thumbHeight / 2f) / track;
+        fraction = Math.max(0f, Math.min(1f, fraction));
+        int found = sections.sectionAt(Math.min(count - 1, (int) (fraction * count)));
+        if(found != section && 0 <= found) {
+            section = found;
+            // The rows may not have caught up with the sections yet
+            int start = Math.min(count - 1, sections.start(found));
+            RecyclerView.LayoutManager layout = list.getLayoutManager();
+            if(layout instanceof LinearLayoutManager)
+                ((LinearLayoutManager) layout).scrollToPositionWithOffset(start, 0);
+            else list.scrollToPosition(start);
+        }
+        list.invalidate();
+    }
+}
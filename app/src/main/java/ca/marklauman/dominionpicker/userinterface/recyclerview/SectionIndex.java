@@ -0,0 +1,82 @@
+package ca.marklauman.dominionpicker.userinterface.recyclerview;
+
+import java.util.Arrays;
+
+/** The sections of a sorted list: runs of rows that share a label,
+ *  such as the cards of one set when cards are sorted by set.
+ *  An index is built once for each list, and finding the section of a position
+ *  is a binary search, so it may be done on every frame of a scroll.
+ *  An index never changes once it is made.
+ *  @author Mark Lauman */
+public final class SectionIndex {
+    /** The index of a list with no sections. */
+    public static final SectionIndex EMPTY = new SectionIndex(new String[0], new int[0]);
+
+    /** The label of each section. */
+    private final String[] labels;
+    /** The first position of each section, in increasing order. */
+    private final int[] starts;
+
+
+    private SectionIndex(String[] labels, int[] starts) {
+        this.labels = labels;
+        this.starts = starts;
+    }
+
+
+    /** Build the index of a list.
+     *  @param rowLabels The label of each row of the list, in order.
+     *                   Neighbouring rows with equal labels are in the same section.
+     *  @return The index of the list. */
+    public static SectionIndex build(String[] rowLabels) {
+        if(rowLabels.length == 0) return EMPTY;
+        String[] labels = new String[rowLabels.length];
+        int[] starts = new int[rowLabels.length];
+        int count = 0;
+        for(int pos = 0; pos < rowLabels.length; pos++) {
+            if(count != 0 && equal(labels[count - 1], rowLabels[pos])) continue;
+            labels[count] = rowLabels[pos];
+            starts[count] = pos;
+            count++;
+        }
+        return new SectionIndex(Arrays.copyOf(labels, count), Arrays.copyOf(starts, count));
+    }
+
+
+    /** Null-safe string comparison. */
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+
+    /** Number of sections in the list. */
+    public int size() {
+        return labels.length;
+    }
+
+
+    /** Get the label of a section. */
+    public String label(int section) {
+        return labels[section];
+    }
+
+
+    /** Get the first position of a section. */
+    public int start(int section) {
+        return starts[section];
+    }
+
+
+    /** Find the section holding a position of the list.
+     *  @param position A position in the list.
+     *  @return The section of that position, or -1 if the list has no sections.
+     *          Positions before the list are in the first section,
+     *          positions after it are in the last. */
+    public int sectionAt(int position) {
+        if(starts.length == 0) return -1;
+        int found = Arrays.binarySearch(starts, position);
+        // Not a section start: the section is the one before the insertion point
+        if(found < 0) found = Math.max(0, -found - 2);
+        return found;
+    }
+}
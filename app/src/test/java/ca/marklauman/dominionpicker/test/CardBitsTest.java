@@ -0,0 +1,99 @@
+package ca.marklauman.dominionpicker.test;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import ca.marklauman.dominionpicker.settings.CardBits;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Class devoted to testing {@link CardBits} and its saved format.
+ *  @author Mark Lauman */
+public class CardBitsTest {
+
+    /** Check that a set survives being encoded and parsed. */
+    private static void checkRoundTrip(CardBits bits) {
+        String encoded = bits.encode();
+        assertTrue(encoded, encoded.startsWith("v1:"));
+        CardBits parsed = CardBits.parse(encoded);
+        assertEquals(bits, parsed);
+        assertArrayEquals(bits.toArray(), parsed.toArray());
+        assertEquals(bits.toString(), parsed.toString());
+    }
+
+    @Test
+    public void parseList() {
+        CardBits bits = CardBits.parse("5, 0,,x,-3,64,300");
+        assertArrayEquals(new long[]{0, 5, 64, 300}, bits.toArray());
+        assertEquals(4, bits.size());
+        assertTrue(bits.contains(64));
+        assertFalse(bits.contains(63));
+        assertFalse(bits.contains(-3));
+        assertEquals("0,5,64,300", bits.toString());
+        assertEquals("100001", CardBits.of(0, 5).mask());
+        assertTrue(CardBits.parse(null).isEmpty());
+        assertTrue(CardBits.parse("").isEmpty());
+    }
+
+    @Test
+    public void roundTrip() {
+        checkRoundTrip(CardBits.EMPTY);
+        checkRoundTrip(CardBits.of(0));
+        checkRoundTrip(CardBits.of(7));
+        checkRoundTrip(CardBits.of(8));
+        checkRoundTrip(CardBits.of(63, 64));
+        checkRoundTrip(CardBits.of(1, 2, 3, 314));
+
+        // Every card of a 315 card game
+        long[] all = new long[315];
+        for(int i = 0; i < all.length; i++) all[i] = i;
+        CardBits full = CardBits.of(all);
+        checkRoundTrip(full);
+        // 40 bytes of bits, in 54 base64 digits
+        assertEquals(3 + 54, full.encode().length());
+
+        Random rand = new Random(42);
+        for(int run = 0; run < 200; run++) {
+            long[] ids = new long[rand.nextInt(60)];
+            for(int i = 0; i < ids.length; i++) ids[i] = rand.nextInt(400);
+            checkRoundTrip(CardBits.of(ids));
+        }
+    }
+
+    @Test
+    public void migrateList() {
+        // What the v7 to v8 preference update does
+        String old = "12,4,200,201,33";
+        String encoded = CardBits.parse(old).encode();
+        assertArrayEquals(new long[]{4, 12, 33, 200, 201}, CardBits.parse(encoded).toArray());
+        // Updating twice must not change the selections
+        assertEquals(encoded, CardBits.parse(encoded).encode());
+    }
+
+    @Test
+    public void invalidEncoding() {
+        assertTrue(CardBits.parse("v1:A").isEmpty());
+        assertTrue(CardBits.parse("v1:AB*D").isEmpty());
+        assertTrue(CardBits.parse("v1:").isEmpty());
+    }
+
+    @Test
+    public void bitSet() {
+        CardBits bits = CardBits.of(0, 63, 64, 130, 314);
+        BitSet copy = bits.toBitSet();
+        assertEquals(5, copy.cardinality());
+        assertTrue(copy.get(130));
+        assertEquals(bits, CardBits.of(copy));
+
+        // Changing the copy must not change the set
+        copy.clear(130);
+        assertTrue(bits.contains(130));
+        assertEquals(CardBits.of(0, 63, 64, 314), CardBits.of(copy));
+        assertTrue(CardBits.of(new BitSet()).isEmpty());
+    }
+}
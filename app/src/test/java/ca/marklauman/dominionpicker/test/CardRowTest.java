@@ -0,0 +1,167 @@
+package ca.marklauman.dominionpicker.test;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import ca.marklauman.dominionpicker.userinterface.recyclerview.CardRow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/** Class devoted to testing {@link CardRow}.
+ *  @author Mark Lauman */
+public class CardRowTest {
+
+    /** A target that keeps what it is shown, like the views of a row. */
+    private static class Fields implements CardRow.Target {
+        long id;
+        String name;
+        String image;
+        String details;
+        int set;
+        String setName;
+        CharSequence type;
+        String requires;
+        String colors;
+
+        @Override
+        public void showCard(long id, String name, String image, String details) {
+            this.id = id;
+            this.name = name;
+            this.image = image;
+            this.details = details;
+        }
+
+        @Override
+        public void showSet(int set, String name) {
+            this.set = set;
+            setName = name;
+        }
+
+        @Override
+        public void showType(CharSequence type, String requires) {
+            this.type = type;
+            this.requires = requires;
+        }
+
+        @Override
+        public void showColors(String colors) {
+            this.colors = colors;
+        }
+    }
+
+
+    /** A target that counts the calls it gets, and the pictures it is asked to load. */
+    private static class Calls implements CardRow.Target {
+        int calls;
+        int images;
+
+        @Override
+        public void showCard(long id, String name, String image, String details) {
+            calls++;
+            images++;
+        }
+
+        @Override
+        public void showSet(int set, String name) {
+            calls++;
+        }
+
+        @Override
+        public void showType(CharSequence type, String requires) {
+            calls++;
+        }
+
+        @Override
+        public void showColors(String colors) {
+            calls++;
+        }
+    }
+
+
+    /** Make the row of a card, as it is built each time the cards are read. */
+    private static CardRow village(int set) {
+        return new CardRow(12, new String("Village"), new String("image"),
+                           new String("Village details"), set, new String("Base"),
+                           new String("Action"), null, new String("0"));
+    }
+
+
+    @Test
+    public void bindFields() {
+        CardRow row = new CardRow(12, "Village", "image", "Village details", 3, "Base",
+                                  "Action", "", "0");
+        Fields fields = new Fields();
+        row.bindTo(fields);
+        assertEquals(12, fields.id);
+        assertEquals("Village", fields.name);
+        assertEquals("image", fields.image);
+        assertEquals("Village details", fields.details);
+        assertEquals(3, fields.set);
+        assertEquals("Base", fields.setName);
+        assertEquals("Action", fields.type);
+        assertNull(fields.requires);
+        assertEquals("0", fields.colors);
+    }
+
+
+    @Test
+    public void rebindCostsNothing() {
+        CardRow row = village(3);
+        Calls calls = new Calls();
+        row.bindTo(calls, null);
+        assertEquals(4, calls.calls);
+        assertEquals(1, calls.images);
+
+        // The same row, and the same card read again, leave the views alone
+        row.bindTo(calls, row);
+        village(3).bindTo(calls, row);
+        assertEquals(4, calls.calls);
+        assertEquals(1, calls.images);
+    }
+
+
+    @Test
+    public void rebindChangedFields() {
+        Calls calls = new Calls();
+        village(4).bindTo(calls, village(3));
+        assertEquals(1, calls.calls);
+        assertEquals(0, calls.images);
+
+        Fields fields = new Fields();
+        village(3).bindTo(fields);
+        village(4).bindTo(fields, village(3));
+        assertEquals(4, fields.set);
+        assertEquals("Village", fields.name);
+    }
+
+
+    @Test
+    public void rebindAllocatesNothing() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean memory = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(memory.isThreadAllocatedMemorySupported());
+        memory.setThreadAllocatedMemoryEnabled(true);
+
+        // Rows read from two loads of the same cards, bound over each other
+        CardRow[] shown = {village(3), village(3)};
+        Calls calls = new Calls();
+        long thread = Thread.currentThread().getId();
+        for(int i = 0; i < 10000; i++)
+            shown[i % 2].bindTo(calls, shown[(i + 1) % 2]);
+        long before = memory.getThreadAllocatedBytes(thread);
+        for(int i = 0; i < 100000; i++)
+            shown[i % 2].bindTo(calls, shown[(i + 1) % 2]);
+        long allocated = memory.getThreadAllocatedBytes(thread) - before;
+
+        assertEquals(0, calls.calls);
+        // Far less than one byte per bind
+        assertTrue("allocated " + allocated + " bytes", allocated < 4096);
+    }
+
+}
@@ -0,0 +1,64 @@
+package ca.marklauman.dominionpicker.test;
+
+import org.junit.Test;
+
+import ca.marklauman.dominionpicker.database.IdFilter;
+import ca.marklauman.dominionpicker.database.MaskFilter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Class devoted to testing {@link IdFilter} and ensuring that its selections
+ *  always bind as many arguments as they have placeholders, and never too many.
+ *  @author Mark Lauman */
+public class IdFilterTest {
+    /** SQLite's default limit on the arguments of a statement. */
+    private static final int SQLITE_MAX_VARIABLES = 999;
+
+    /** Make the ids 0 to count - 1. */
+    private static long[] ids(int count) {
+        long[] res = new long[count];
+        for(int i = 0; i < count; i++) res[i] = i;
+        return res;
+    }
+
+    /** Count the placeholders of a selection. */
+    private static int placeholders(String selection) {
+        int count = 0;
+        for(int i = 0; i < selection.length(); i++)
+            if(selection.charAt(i) == '?') count++;
+        return count;
+    }
+
+    @Test
+    public void argumentsMatchSelection() {
+        for(int count = 0; count <= 2000; count++) {
+            long[] ids = ids(count);
+            String[] args = IdFilter.args(ids);
+            assertEquals("in " + count, placeholders(IdFilter.in("_id", ids)), args.length);
+            assertEquals("not in " + count, placeholders(IdFilter.notIn("_id", ids)),
+                         args.length);
+            // Room is left for the 5 arguments of the picker's filter
+            assertTrue("arguments for " + count, args.length + 5 < SQLITE_MAX_VARIABLES);
+        }
+    }
+
+    @Test
+    public void paddedLists() {
+        String[] args = IdFilter.args(new long[]{4, 9, 2});
+        assertEquals(16, args.length);
+        assertEquals("4", args[0]);
+        assertEquals("9", args[1]);
+        assertEquals("2", args[2]);
+        for(int i = 3; i < args.length; i++)
+            assertEquals("-1", args[i]);
+        assertEquals(32, IdFilter.args(ids(17)).length);
+    }
+
+    @Test
+    public void longListsUseMask() {
+        long[] ids = ids(600);
+        assertEquals(MaskFilter.notIn("_id"), IdFilter.notIn("_id", ids));
+        assertEquals(MaskFilter.mask(ids), IdFilter.args(ids)[0]);
+    }
+}
@@ -0,0 +1,51 @@
+package ca.marklauman.dominionpicker.test;
+
+import org.junit.Test;
+
+import ca.marklauman.dominionpicker.userinterface.recyclerview.SectionIndex;
+
+import static org.junit.Assert.assertEquals;
+
+/** Class devoted to testing {@link SectionIndex}.
+ *  @author Mark Lauman */
+public class SectionIndexTest {
+
+    @Test
+    public void emptyList() {
+        SectionIndex index = SectionIndex.build(new String[0]);
+        assertEquals(0, index.size());
+        assertEquals(-1, index.sectionAt(0));
+    }
+
+    @Test
+    public void sections() {
+        SectionIndex index = SectionIndex.build(new String[]{"Base", "Base", "Base", "Intrigue",
+                                                             "Seaside", "Seaside", null, null,
+                                                             "Base"});
+        assertEquals(5, index.size());
+        String[] labels = {"Base", "Intrigue", "Seaside", null, "Base"};
+        int[] starts = {0, 3, 4, 6, 8};
+        for(int section = 0; section < labels.length; section++) {
+            assertEquals(labels[section], index.label(section));
+            assertEquals(starts[section], index.start(section));
+        }
+    }
+
+    @Test
+    public void sectionAt() {
+        String[] rows = new String[300];
+        for(int pos = 0; pos < rows.length; pos++)
+            rows[pos] = "Set " + (pos * pos / 1000);
+        SectionIndex index = SectionIndex.build(rows);
+
+        // Compare the binary search to a walk through the rows
+        int section = 0;
+        for(int pos = 0; pos < rows.length; pos++) {
+            if(0 < pos && !rows[pos].equals(rows[pos - 1])) section++;
+            assertEquals("position " + pos, section, index.sectionAt(pos));
+            assertEquals(rows[pos], index.label(index.sectionAt(pos)));
+        }
+        assertEquals(0, index.sectionAt(-5));
+        assertEquals(index.size() - 1, index.sectionAt(rows.length + 10));
+    }
+}